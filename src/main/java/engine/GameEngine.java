@@ -1,5 +1,30 @@
 package engine;
 
+import static org.lwjgl.opengl.GL11.GL_COLOR_BUFFER_BIT;
+import static org.lwjgl.opengl.GL11.GL_LINEAR;
+import static org.lwjgl.opengl.GL11.GL_NEAREST;
+import static org.lwjgl.opengl.GL11.glViewport;
+import static org.lwjgl.opengl.GL30.GL_DRAW_FRAMEBUFFER;
+import static org.lwjgl.opengl.GL30.GL_READ_FRAMEBUFFER;
+import static org.lwjgl.opengl.GL30.glBindFramebuffer;
+import static org.lwjgl.opengl.GL30.glBlitFramebuffer;
+
+import engine.audio.AudioEngine;
+import engine.graph.FrameBuffer;
+import engine.graph.FrameCapture;
+import engine.graph.PngFrameWriter;
+import engine.graph.ResolutionScaler;
+import engine.graph.text.Font;
+import engine.graph.text.TextRenderer;
+import engine.profile.Profiler;
+import engine.state.ISnapshotable;
+import engine.state.SnapshotRing;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
 /**
  * Contains our game loop code. Implements Runnable interface because the game loop will be run inside a separate thread.
  * Delegates the input and update methods to the IGameLogic instance. The render method is delegated to the IGameLogic instance
@@ -10,18 +35,64 @@ public class GameEngine implements Runnable {
     public static final int TARGET_FPS = 75;
     public static final int TARGET_UPS = 30;
 
+    // Keep the last few seconds of updates around for rollback
+    public static final int SNAPSHOT_TICKS = TARGET_UPS * 4;
+
+    public static final int HUD_FONT_SIZE = 18;
+
+    // The profiler scope around rendering the scene, whose GPU time drives the resolution scale
+    private static final String RENDER_SCOPE = "render";
+
     private final Window window;
     private final Thread gameLoopThread;
     private final Timer timer;
     private final IGameLogic gameLogic;
+    private final SnapshotRing snapshots;
+    private final Profiler profiler;
+    private final AudioEngine audio;
+
+    // Times the startup phases, dropped once the first frame was shown
+    private StartupTimer startup;
+
+    // Only used when frames are captured or the resolution is scaled, the scene is then rendered offscreen
+    private FrameBuffer renderTarget;
+    private FrameCapture frameCapture;
+
+    // Holds the upscaled image for the capture to read when the scene is rendered at a lower resolution
+    private FrameBuffer captureTarget;
+    private long frame;
+
+    // Renders the scene at a lower resolution when frames run over budget, enabled with -Dresolution.dynamic=true
+    private ResolutionScaler resolutionScaler;
+    private long lastGpuFrame;
+
+    // Frame time overlay, only drawn when a font is given with -Dhud.font=<resource>
+    private TextRenderer textRenderer;
+    private Font hudFont;
+    private final StringBuilder hudText = new StringBuilder();
+    private long lastFrameTime;
+    private float frameMillis;
+    private long tick;
 
     public GameEngine(String windowTitle, int width, int height, boolean vSync, IGameLogic gameLogic) throws Exception {
+        this(windowTitle, width, height, vSync, gameLogic, new Profiler());
+    }
+
+    /**
+     * Create the engine with a profiler that is shared with the game logic, so the game can add its own scopes.
+     */
+    public GameEngine(String windowTitle, int width, int height, boolean vSync, IGameLogic gameLogic, Profiler profiler)
+        throws Exception {
 
         // Create a new thread that executes the run method of our GameEngine, which will contain our game loop.
         gameLoopThread = new Thread(this, "GAME_LOOP_THREAD");
         window = new Window(windowTitle, width, height, vSync);
         this.gameLogic = gameLogic;
         timer = new Timer();
+        snapshots = new SnapshotRing(SNAPSHOT_TICKS);
+        this.profiler = profiler;
+        audio = new AudioEngine();
+        startup = new StartupTimer();
 
     }
 
@@ -56,10 +127,95 @@ public class GameEngine implements Runnable {
 
     }
 
+    /**
+     * Start up in two halves. Reading resources and building meshes only needs the CPU, so it runs on a worker thread while
+     * this thread creates the window and context. Once both are done, the game logic uploads what was loaded to the GPU.
+     */
     protected void init() throws Exception {
+
+        FutureTask<Void> load = new FutureTask<>(this::load);
+        new Thread(load, "STARTUP_LOAD_THREAD").start();
+
+        int phase = startup.begin("audio start");
+        audio.start();
+        startup.end(phase);
+
+        phase = startup.begin("window and context");
         window.init();
+        startup.end(phase);
+
+        phase = startup.begin("profiler init");
+        profiler.init();
         timer.init();
+        startup.end(phase);
+
+        // Whatever the worker hasn't finished yet is the only time spent waiting for it
+        phase = startup.begin("wait for load");
+        try {
+            load.get();
+        }
+        catch (ExecutionException excp) {
+            throw excp.getCause() instanceof Exception ? (Exception) excp.getCause() : excp;
+        }
+        startup.end(phase);
+
+        phase = startup.begin("game init");
         gameLogic.init();
+        startup.end(phase);
+
+        // Game logic that opts into snapshots is saved after every update
+        if (gameLogic instanceof ISnapshotable) {
+            snapshots.register((ISnapshotable) gameLogic);
+        }
+        snapshots.init();
+
+        // Capture every frame to PNG files when a directory is given with -Dcapture.dir=<dir>
+        String captureDir = System.getProperty("capture.dir");
+        if (captureDir != null) {
+            frameCapture = new FrameCapture(new PngFrameWriter(new File(captureDir)));
+            frameCapture.init();
+        }
+
+        // The scale range can be set with -Dresolution.min=<scale> and -Dresolution.max=<scale>
+        if (Boolean.getBoolean("resolution.dynamic")) {
+            String minScale = System.getProperty("resolution.min", Float.toString(ResolutionScaler.DEFAULT_MIN_SCALE));
+            String maxScale = System.getProperty("resolution.max", Float.toString(ResolutionScaler.DEFAULT_MAX_SCALE));
+            resolutionScaler = new ResolutionScaler(Float.parseFloat(minScale), Float.parseFloat(maxScale), 1000f / TARGET_FPS);
+        }
+
+        if (frameCapture != null || resolutionScaler != null) {
+            renderTarget = new FrameBuffer(getTargetWidth(), getTargetHeight());
+        }
+        if (frameCapture != null && resolutionScaler != null) {
+            captureTarget = new FrameBuffer(window.getWidth(), window.getHeight());
+        }
+
+        if (hudFont != null) {
+            phase = startup.begin("hud init");
+            textRenderer = new TextRenderer(HUD_FONT_SIZE);
+            textRenderer.init();
+            startup.end(phase);
+        }
+
+    }
+
+    /**
+     * The CPU-only half of the startup, run on the worker thread. Must not make OpenGL calls.
+     */
+    private Void load() throws Exception {
+
+        int phase = startup.begin("game load");
+        gameLogic.load();
+        startup.end(phase);
+
+        String hudFontResource = System.getProperty("hud.font");
+        if (hudFontResource != null) {
+            phase = startup.begin("hud font load");
+            hudFont = new Font(hudFontResource, HUD_FONT_SIZE);
+            startup.end(phase);
+        }
+        return null;
+
     }
 
     /**
@@ -72,6 +228,10 @@ public class GameEngine implements Runnable {
         float accumulator = 0f;
         float interval = 1f / TARGET_UPS;
 
+        // Stop on our own after a number of frames when asked to with -Dengine.exitAfterFrames=<frames>, for training runs
+        long exitAfterFrames = Long.getLong("engine.exitAfterFrames", 0);
+        long frames = 0;
+
         boolean running = true;
         while (running) {
 
@@ -100,6 +260,9 @@ public class GameEngine implements Runnable {
                 sync();
             }
 
+            frames++;
+            running = !window.windowShouldClose() && (exitAfterFrames <= 0 || frames < exitAfterFrames);
+
         }
 
     }
@@ -131,16 +294,270 @@ public class GameEngine implements Runnable {
     }
 
     protected void update(float interval) {
+
+        profiler.beginCpu("update");
         gameLogic.update(interval);
+        profiler.end();
+
+        tick++;
+        if (snapshots.hasStates()) {
+            profiler.beginCpu("snapshot");
+            snapshots.save(tick);
+            profiler.end();
+        }
+
+    }
+
+    /**
+     * Restore the game state saved at the given update tick. The game loop carries on from there, so the following updates
+     * resimulate the discarded ticks.
+     *
+     * @param tick the update tick to roll back to
+     */
+    public void rollback(long tick) {
+        snapshots.restore(tick);
+        this.tick = tick;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public SnapshotRing getSnapshots() {
+        return snapshots;
     }
 
     protected void render() {
-        gameLogic.render(window);
+
+        long renderStart = System.nanoTime();
+        profiler.beginFrame();
+        profiler.begin(RENDER_SCOPE);
+        if (renderTarget != null) {
+            renderOffscreen();
+        }
+        else {
+            gameLogic.render(window);
+        }
+        profiler.end();
+        long renderNanos = System.nanoTime() - renderStart;
+
+        updateFrameTime();
+        if (textRenderer != null) {
+            profiler.begin("hud");
+            renderHud();
+            profiler.end();
+        }
+
+        if (resolutionScaler != null) {
+            updateResolutionScale(renderNanos);
+        }
+
+        profiler.begin("swap");
         window.update();
+        profiler.end();
+
+        if (startup != null) {
+            startup.report();
+            startup = null;
+        }
+
+    }
+
+    /**
+     * Render the game into the offscreen target and copy it to the window. When the resolution is scaled, only part of the
+     * target is rendered to and then stretched over the window with linear filtering. When capturing, the full size image is
+     * read back from a framebuffer object, since the window's own framebuffer is undefined while it is hidden. The pixels are
+     * handed to the capture a few frames later, so this never waits for the GPU.
+     */
+    private void renderOffscreen() {
+
+        // The game renders into the target, so we deal with the window being resized
+        int width = window.getWidth();
+        int height = window.getHeight();
+        if (renderTarget.getWidth() != getTargetWidth() || renderTarget.getHeight() != getTargetHeight()) {
+            renderTarget.resize(getTargetWidth(), getTargetHeight());
+        }
+        window.setResized(false);
+
+        int sceneWidth = resolutionScaler != null ? resolutionScaler.scale(width) : width;
+        int sceneHeight = resolutionScaler != null ? resolutionScaler.scale(height) : height;
+        renderTarget.bind();
+        glViewport(0, 0, sceneWidth, sceneHeight);
+        gameLogic.render(window);
+        renderTarget.unbind();
+        glViewport(0, 0, width, height);
+
+        profiler.begin("upscale");
+        boolean scaled = sceneWidth != width || sceneHeight != height;
+        FrameBuffer image = renderTarget;
+        if (frameCapture != null && scaled) {
+
+            // Upscale into a window sized target first, so the capture sees what the window shows
+            if (captureTarget.getWidth() != width || captureTarget.getHeight() != height) {
+                captureTarget.resize(width, height);
+            }
+            blit(renderTarget, sceneWidth, sceneHeight, captureTarget.getFboId(), width, height, GL_LINEAR);
+            image = captureTarget;
+            scaled = false;
+
+        }
+        int imageWidth = scaled ? sceneWidth : width;
+        int imageHeight = scaled ? sceneHeight : height;
+        blit(image, imageWidth, imageHeight, 0, width, height, scaled ? GL_LINEAR : GL_NEAREST);
+        profiler.end();
+
+        if (frameCapture != null) {
+            profiler.begin("capture");
+            glBindFramebuffer(GL_READ_FRAMEBUFFER, image.getFboId());
+            frameCapture.capture(width, height, frame++);
+            glBindFramebuffer(GL_READ_FRAMEBUFFER, 0);
+            frameCapture.poll();
+            profiler.end();
+        }
+
+    }
+
+    /**
+     * Copy the lower left part of a framebuffer object over all of another framebuffer.
+     */
+    private static void blit(FrameBuffer source, int sourceWidth, int sourceHeight, int destFboId, int destWidth,
+        int destHeight, int filter) {
+
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, source.getFboId());
+        glBindFramebuffer(GL_DRAW_FRAMEBUFFER, destFboId);
+        glBlitFramebuffer(0, 0, sourceWidth, sourceHeight, 0, 0, destWidth, destHeight, GL_COLOR_BUFFER_BIT, filter);
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, 0);
+        glBindFramebuffer(GL_DRAW_FRAMEBUFFER, 0);
+
+    }
+
+    /**
+     * The size of the offscreen target, big enough for the scene at the highest scale.
+     */
+    private int getTargetWidth() {
+        return resolutionScaler != null ? Math.max(Math.round(window.getWidth() * resolutionScaler.getMaxScale()), 1)
+            : window.getWidth();
+    }
+
+    private int getTargetHeight() {
+        return resolutionScaler != null ? Math.max(Math.round(window.getHeight() * resolutionScaler.getMaxScale()), 1)
+            : window.getHeight();
+    }
+
+    /**
+     * Feed the scaler the GPU time of the render scope of the latest frame the GPU has finished. The HUD and the buffer swap
+     * are left out, so waiting for vsync doesn't count. Without timer queries, the CPU time spent in the render scope of this
+     * frame is used instead, which misses frames that are slow on the GPU.
+     *
+     * @param cpuNanos the CPU time spent in the render scope of this frame
+     */
+    private void updateResolutionScale(long cpuNanos) {
+
+        if (!profiler.isGpuEnabled()) {
+            resolutionScaler.update(cpuNanos / 1_000_000f);
+        }
+        else if (profiler.getCollectedFrames() != lastGpuFrame) {
+            lastGpuFrame = profiler.getCollectedFrames();
+            long gpuNanos = profiler.getGpuScopeNanos(RENDER_SCOPE);
+            if (gpuNanos >= 0) {
+                resolutionScaler.update(gpuNanos / 1_000_000f);
+            }
+        }
+
+    }
+
+    /**
+     * Measure the time since the previous frame, smoothed so the overlay is readable.
+     */
+    private void updateFrameTime() {
+
+        long now = System.nanoTime();
+        if (lastFrameTime != 0) {
+            float millis = (now - lastFrameTime) / 1_000_000f;
+            frameMillis = frameMillis == 0 ? millis : frameMillis * 0.9f + millis * 0.1f;
+        }
+        lastFrameTime = now;
+
+    }
+
+    /**
+     * Draw the frame rate and frame time in the top left corner. The text is rebuilt in place, so this doesn't allocate.
+     */
+    private void renderHud() {
+
+        int tenths = Math.round(frameMillis * 10);
+        hudText.setLength(0);
+        hudText.append("FPS ").append(frameMillis > 0 ? Math.round(1000 / frameMillis) : 0)
+            .append("  ").append(tenths / 10).append('.').append(tenths % 10).append(" ms");
+        if (resolutionScaler != null) {
+            hudText.append("  ").append(Math.round(resolutionScaler.getScale() * 100)).append('%');
+        }
+
+        textRenderer.begin(window.getWidth(), window.getHeight());
+        textRenderer.drawDynamicText(hudFont, hudText, 8, 8, 1.0f, 1.0f, 1.0f, 1.0f);
+        textRenderer.end();
+
+    }
+
+    /**
+     * The smoothed time between the last frames.
+     *
+     * @return the frame time in milliseconds
+     */
+    public float getFrameMillis() {
+        return frameMillis;
+    }
+
+    /**
+     * The dynamic resolution controller, to read the current scale or tune its hysteresis.
+     *
+     * @return the scaler, or null if dynamic resolution is off
+     */
+    public ResolutionScaler getResolutionScaler() {
+        return resolutionScaler;
+    }
+
+    public AudioEngine getAudio() {
+        return audio;
+    }
+
+    public Profiler getProfiler() {
+        return profiler;
     }
 
     protected void cleanup() {
+
         gameLogic.cleanup();
+        snapshots.cleanup();
+        if (frameCapture != null) {
+            frameCapture.cleanup();
+        }
+        if (renderTarget != null) {
+            renderTarget.cleanup();
+        }
+        if (captureTarget != null) {
+            captureTarget.cleanup();
+        }
+        if (textRenderer != null) {
+            textRenderer.cleanup();
+        }
+        if (hudFont != null) {
+            hudFont.cleanup();
+        }
+
+        // Write the profiler timeline when a trace file is requested with -Dprofiler.trace=<file>
+        String traceFile = System.getProperty("profiler.trace");
+        if (traceFile != null) {
+            try (Writer writer = new FileWriter(traceFile)) {
+                profiler.writeChromeTrace(writer);
+            }
+            catch (Exception excp) {
+                excp.printStackTrace();
+            }
+        }
+        profiler.cleanup();
+        audio.cleanup();
+
     }
 
 }
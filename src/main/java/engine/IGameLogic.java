@@ -6,6 +6,21 @@ package engine;
  */
 public interface IGameLogic {
 
+    /**
+     * Do the CPU-only part of the startup, such as reading resources and building meshes. This runs on a worker thread while
+     * the window and OpenGL context are being created, so it must not make any OpenGL calls.
+     *
+     * @throws Exception if loading fails
+     */
+    default void load() throws Exception {
+    }
+
+    /**
+     * Create the OpenGL objects from what was loaded. Called on the game loop thread with the context current, after load has
+     * finished.
+     *
+     * @throws Exception if initialization fails
+     */
     void init() throws Exception;
 
     void input(Window window);
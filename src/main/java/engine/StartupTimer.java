@@ -0,0 +1,58 @@
+package engine;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records how long each startup phase takes and when the first frame was shown. Phases may run on different threads at the
+ * same time, so their start is printed relative to JVM start to show how they overlap.
+ */
+public class StartupTimer {
+
+    private final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+
+    // Offset between the wall clock the JVM start time is given in and System.nanoTime
+    private final long nanoOffset = System.currentTimeMillis() * 1_000_000L - System.nanoTime();
+
+    private final List<String> names = new ArrayList<>();
+    private final List<long[]> times = new ArrayList<>();
+
+    /**
+     * Start timing a phase.
+     *
+     * @param name the phase name
+     * @return the phase id to pass to end
+     */
+    public synchronized int begin(String name) {
+        names.add(name);
+        times.add(new long[] { System.nanoTime(), 0 });
+        return names.size() - 1;
+    }
+
+    public synchronized void end(int phase) {
+        times.get(phase)[1] = System.nanoTime();
+    }
+
+    /**
+     * Print every phase and the time from JVM start to the first frame.
+     */
+    public synchronized void report() {
+
+        long firstFrame = System.nanoTime();
+        StringBuilder report = new StringBuilder("Startup phases (start after JVM start, duration):\n");
+        for (int i = 0; i < names.size(); i++) {
+            long[] phase = times.get(i);
+            report.append(String.format("  %-24s %8.1f ms %8.1f ms%n", names.get(i), sinceJvmStart(phase[0]),
+                (phase[1] - phase[0]) / 1_000_000.0));
+        }
+        report.append(String.format("  %-24s %8.1f ms%n", "first frame", sinceJvmStart(firstFrame)));
+        System.out.print(report);
+
+    }
+
+    private double sinceJvmStart(long nanoTime) {
+        return (nanoTime + nanoOffset - jvmStartMillis * 1_000_000L) / 1_000_000.0;
+    }
+
+}
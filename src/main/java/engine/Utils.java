@@ -1,6 +1,14 @@
 package engine;
 
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memFree;
+import static org.lwjgl.system.MemoryUtil.memRealloc;
+
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Scanner;
 
 public class Utils {
@@ -18,4 +26,39 @@ public class Utils {
 
     }
 
+    /**
+     * Read a resource into an off-heap buffer, for native code such as stb that needs the raw bytes. The buffer is flipped and
+     * ready to read, and must be freed with memFree by the caller.
+     *
+     * @param fileName the resource name
+     * @return the resource bytes
+     * @throws IOException if the resource cannot be found or read
+     */
+    public static ByteBuffer loadResourceBytes(String fileName) throws IOException {
+
+        InputStream in = Utils.class.getClass().getResourceAsStream(fileName);
+        if (in == null) {
+            throw new IOException("Resource not found: " + fileName);
+        }
+
+        ByteBuffer buffer = memAlloc(8 * 1024);
+        try (ReadableByteChannel channel = Channels.newChannel(in)) {
+
+            // Double the buffer whenever it fills up
+            while (channel.read(buffer) != -1) {
+                if (!buffer.hasRemaining()) {
+                    buffer = memRealloc(buffer, buffer.capacity() * 2);
+                }
+            }
+
+        }
+        catch (IOException excp) {
+            memFree(buffer);
+            throw excp;
+        }
+        buffer.flip();
+        return buffer;
+
+    }
+
 }
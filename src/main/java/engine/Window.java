@@ -81,7 +81,7 @@ public class Window {
         glfwWindowHint(GLFW_OPENGL_FORWARD_COMPAT, GL_TRUE);
 
         // Create the window
-        windowHandle = glfwCreateWindow(300, 300, "Hello World!", NULL, NULL);
+        windowHandle = glfwCreateWindow(width, height, title, NULL, NULL);
         if (windowHandle == NULL) {
             throw new RuntimeException("Failed to create the GLFW window");
         }
@@ -120,14 +120,10 @@ public class Window {
             glfwSwapInterval(1);
         }
 
-        // Make the OpenGL context current
-        glfwMakeContextCurrent(windowHandle);
-
-        // Enable v-sync
-        glfwSwapInterval(1);
-
-        // Make the window visible
-        glfwShowWindow(windowHandle);
+        // Make the window visible, unless it was asked to stay hidden for offscreen rendering with -Dwindow.hidden=true
+        if (!Boolean.getBoolean("window.hidden")) {
+            glfwShowWindow(windowHandle);
+        }
 
         GL.createCapabilities();
 
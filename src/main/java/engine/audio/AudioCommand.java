@@ -0,0 +1,33 @@
+package engine.audio;
+
+/**
+ * A request from the game loop or a loading thread to the audio thread. The commands live in a preallocated ring and are
+ * overwritten once processed, so sending one doesn't allocate.
+ */
+class AudioCommand {
+
+    static final int LOAD_SOUND = 1;
+    static final int PLAY_SOUND = 2;
+    static final int PLAY_MUSIC = 3;
+    static final int STOP = 4;
+    static final int SET_GAIN = 5;
+    static final int UNLOAD_SOUND = 6;
+
+    int type;
+    int handle;
+    int priority;
+    float gain;
+    float pitch;
+    boolean loop;
+    Sound sound;
+    Music music;
+
+    // The ring position the command was claimed at
+    long position;
+
+    void clear() {
+        sound = null;
+        music = null;
+    }
+
+}
@@ -0,0 +1,97 @@
+package engine.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded multiple producer, single consumer ring of commands. Any thread may claim a slot, fill it in and publish it, such
+ * as the game loop playing sounds while the startup thread loads them. The audio thread takes the commands in order and
+ * releases their slots. Neither side ever blocks or takes a lock.
+ *
+ * Every slot has a sequence number that says whose turn it is. A slot at position p is free for a producer when its sequence
+ * is p, holds a published command when it is p + 1, and is free again for the next lap when the consumer sets it to p plus
+ * the ring size. Producers race for positions with a compare and set on the tail, so each slot has a single writer.
+ */
+class AudioCommandQueue {
+
+    private final AudioCommand[] commands;
+    private final AtomicLongArray sequences;
+    private final int mask;
+
+    // The next position to read and the next position to claim, only ever increasing
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    AudioCommandQueue(int capacity) {
+
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        commands = new AudioCommand[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            commands[i] = new AudioCommand();
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+
+    }
+
+    /**
+     * Get the next free slot to fill in, or null if the audio thread has fallen behind and the ring is full. The slot belongs
+     * to the calling thread until it is published.
+     */
+    AudioCommand claim() {
+
+        while (true) {
+
+            long position = tail.get();
+            int slot = (int) position & mask;
+            long sequence = sequences.get(slot);
+            if (sequence < position) {
+                return null;
+            }
+
+            // Another producer may have taken the position since we read the tail, then try the next one
+            if (sequence == position && tail.compareAndSet(position, position + 1)) {
+                AudioCommand command = commands[slot];
+                command.position = position;
+                return command;
+            }
+
+        }
+
+    }
+
+    /**
+     * Make a claimed slot visible to the audio thread.
+     */
+    void publish(AudioCommand command) {
+        sequences.lazySet((int) command.position & mask, command.position + 1);
+    }
+
+    /**
+     * Get the oldest published command, or null if there is none. A command published before an older one that is still
+     * being filled in waits for it, so commands are processed in the order they were claimed.
+     */
+    AudioCommand peek() {
+
+        long position = head.get();
+        int slot = (int) position & mask;
+        if (sequences.get(slot) != position + 1) {
+            return null;
+        }
+        return commands[slot];
+
+    }
+
+    /**
+     * Hand the slot of the command returned by peek back to the producers.
+     */
+    void release() {
+
+        long position = head.get();
+        sequences.lazySet((int) position & mask, position + commands.length);
+        head.lazySet(position + 1);
+
+    }
+
+}
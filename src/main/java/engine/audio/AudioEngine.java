@@ -0,0 +1,622 @@
+package engine.audio;
+
+import static org.lwjgl.openal.AL10.AL_BUFFER;
+import static org.lwjgl.openal.AL10.AL_BUFFERS_PROCESSED;
+import static org.lwjgl.openal.AL10.AL_BUFFERS_QUEUED;
+import static org.lwjgl.openal.AL10.AL_FORMAT_MONO16;
+import static org.lwjgl.openal.AL10.AL_FORMAT_STEREO16;
+import static org.lwjgl.openal.AL10.AL_GAIN;
+import static org.lwjgl.openal.AL10.AL_PITCH;
+import static org.lwjgl.openal.AL10.AL_PLAYING;
+import static org.lwjgl.openal.AL10.AL_SOURCE_STATE;
+import static org.lwjgl.openal.AL10.AL_STOPPED;
+import static org.lwjgl.openal.AL10.alBufferData;
+import static org.lwjgl.openal.AL10.alDeleteBuffers;
+import static org.lwjgl.openal.AL10.alGenBuffers;
+import static org.lwjgl.openal.AL10.alGetSourcei;
+import static org.lwjgl.openal.AL10.alSourcePlay;
+import static org.lwjgl.openal.AL10.alSourceQueueBuffers;
+import static org.lwjgl.openal.AL10.alSourceUnqueueBuffers;
+import static org.lwjgl.openal.AL10.alSourcef;
+import static org.lwjgl.openal.AL10.alSourcei;
+import static org.lwjgl.openal.ALC10.alcCloseDevice;
+import static org.lwjgl.openal.ALC10.alcCreateContext;
+import static org.lwjgl.openal.ALC10.alcDestroyContext;
+import static org.lwjgl.openal.ALC10.alcMakeContextCurrent;
+import static org.lwjgl.openal.ALC10.alcOpenDevice;
+import static org.lwjgl.stb.STBVorbis.stb_vorbis_close;
+import static org.lwjgl.stb.STBVorbis.stb_vorbis_decode_memory;
+import static org.lwjgl.stb.STBVorbis.stb_vorbis_get_info;
+import static org.lwjgl.stb.STBVorbis.stb_vorbis_get_samples_short_interleaved;
+import static org.lwjgl.stb.STBVorbis.stb_vorbis_open_memory;
+import static org.lwjgl.stb.STBVorbis.stb_vorbis_seek_start;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.system.MemoryUtil.memAllocShort;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+import engine.Utils;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.lwjgl.openal.AL;
+import org.lwjgl.openal.ALC;
+import org.lwjgl.stb.STBVorbisInfo;
+import org.lwjgl.system.MemoryStack;
+
+/**
+ * Plays sound effects and streams music on a dedicated audio thread, which owns the OpenAL device and every source and buffer.
+ * Other threads only send commands through a lock-free ring, so playing a sound never blocks or allocates. Every public method
+ * may be called from any thread, so sounds can be loaded on a startup thread while the game loop plays others.
+ *
+ * Effects are decoded completely when loaded and kept in OpenAL buffers. Music is decoded with stb_vorbis in small chunks that
+ * are queued on a source and refilled as they are played. There is a fixed number of voices; when they are all busy a new sound
+ * takes the voice with the lowest priority, or is dropped if nothing playing has a lower priority.
+ *
+ * The device is chosen with -Daudio.device=<name>. To run without sound hardware, use OpenAL Soft's null backend by setting
+ * ALSOFT_DRIVERS=null, or its wave writer with ALSOFT_DRIVERS=wave and a file configured in alsoft.conf. If no device can be
+ * opened at all the engine keeps accepting commands and ignores them.
+ */
+public class AudioEngine implements Runnable {
+
+    public static final int MAX_VOICES = 32;
+    public static final int STREAM_BUFFERS = 4;
+    public static final int STREAM_CHUNK_FRAMES = 4096;
+    public static final int COMMAND_CAPACITY = 1024;
+
+    // How long the audio thread sleeps between updates, well below the length of a stream chunk
+    private static final long UPDATE_INTERVAL_NANOS = 5_000_000;
+
+    private final AudioCommandQueue commands = new AudioCommandQueue(COMMAND_CAPACITY);
+    private final Thread audioThread;
+    private volatile boolean running;
+
+    // Shared by every thread sending commands
+    private final List<Music> tracks = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextHandle = new AtomicInteger();
+    private final AtomicInteger droppedCommands = new AtomicInteger();
+
+    // Only touched by the audio thread
+    private final List<Sound> sounds = new ArrayList<>();
+    private long device;
+    private long context;
+    private Voice[] voices;
+    private ShortBuffer chunk;
+    private STBVorbisInfo vorbisInfo;
+
+    public AudioEngine() {
+        audioThread = new Thread(this, "AUDIO_THREAD");
+        audioThread.setDaemon(true);
+    }
+
+    /**
+     * Start the audio thread, which opens the device.
+     */
+    public void start() {
+        running = true;
+        audioThread.start();
+    }
+
+    /**
+     * Load and decode a short Ogg Vorbis effect. The samples are uploaded by the audio thread, so the sound may be played
+     * right away.
+     *
+     * @param resource the Ogg Vorbis resource
+     * @return the sound
+     * @throws Exception if the resource cannot be read or decoded
+     */
+    public Sound loadSound(String resource) throws Exception {
+
+        ByteBuffer data = Utils.loadResourceBytes(resource);
+        Sound sound;
+        try (MemoryStack stack = stackPush()) {
+
+            IntBuffer channels = stack.mallocInt(1);
+            IntBuffer sampleRate = stack.mallocInt(1);
+            ShortBuffer pcm = stb_vorbis_decode_memory(data, channels, sampleRate);
+            if (pcm == null) {
+                throw new Exception("Could not decode sound: " + resource);
+            }
+            if (channels.get(0) > 2) {
+                memFree(pcm);
+                throw new Exception("Only mono and stereo sounds are supported: " + resource);
+            }
+            sound = new Sound(resource, pcm, channels.get(0), sampleRate.get(0));
+
+        }
+        finally {
+            memFree(data);
+        }
+
+        // Loading happens outside the frame, so it is fine to wait for room in the ring
+        AudioCommand command;
+        while ((command = commands.claim()) == null) {
+            Thread.yield();
+        }
+        command.type = AudioCommand.LOAD_SOUND;
+        command.sound = sound;
+        commands.publish(command);
+        return sound;
+
+    }
+
+    /**
+     * Load an Ogg Vorbis track for streaming. Only the compressed file is kept in memory.
+     *
+     * @param resource the Ogg Vorbis resource
+     * @return the music
+     * @throws Exception if the resource cannot be read
+     */
+    public Music loadMusic(String resource) throws Exception {
+        Music music = new Music(resource, Utils.loadResourceBytes(resource));
+        tracks.add(music);
+        return music;
+    }
+
+    /**
+     * Play a sound effect.
+     *
+     * @param sound the sound
+     * @param gain the volume, 1 is unchanged
+     * @param pitch the pitch, 1 is unchanged
+     * @param priority sounds with a higher priority take the voices of lower ones
+     * @return a handle to stop or change the sound with, or 0 if the command couldn't be sent
+     */
+    public int play(Sound sound, float gain, float pitch, int priority) {
+
+        AudioCommand command = commands.claim();
+        if (command == null) {
+            droppedCommands.incrementAndGet();
+            return 0;
+        }
+        int handle = newHandle();
+        command.type = AudioCommand.PLAY_SOUND;
+        command.handle = handle;
+        command.sound = sound;
+        command.gain = gain;
+        command.pitch = pitch;
+        command.priority = priority;
+        commands.publish(command);
+        return handle;
+
+    }
+
+    /**
+     * Stream a music track.
+     *
+     * @param music the music
+     * @param gain the volume, 1 is unchanged
+     * @param loop whether to start over at the end
+     * @param priority music with a higher priority takes the voices of lower ones
+     * @return a handle to stop or change the music with, or 0 if the command couldn't be sent
+     */
+    public int playMusic(Music music, float gain, boolean loop, int priority) {
+
+        AudioCommand command = commands.claim();
+        if (command == null) {
+            droppedCommands.incrementAndGet();
+            return 0;
+        }
+        int handle = newHandle();
+        command.type = AudioCommand.PLAY_MUSIC;
+        command.handle = handle;
+        command.music = music;
+        command.gain = gain;
+        command.loop = loop;
+        command.priority = priority;
+        commands.publish(command);
+        return handle;
+
+    }
+
+    public void stop(int handle) {
+        send(AudioCommand.STOP, handle, 0);
+    }
+
+    public void setGain(int handle, float gain) {
+        send(AudioCommand.SET_GAIN, handle, gain);
+    }
+
+    /**
+     * Free the OpenAL buffer of a sound, stopping every voice still playing it.
+     *
+     * @param sound the sound
+     */
+    public void unloadSound(Sound sound) {
+
+        AudioCommand command;
+        while ((command = commands.claim()) == null) {
+            Thread.yield();
+        }
+        command.type = AudioCommand.UNLOAD_SOUND;
+        command.sound = sound;
+        commands.publish(command);
+
+    }
+
+    /**
+     * The number of commands dropped because the audio thread had fallen behind.
+     *
+     * @return the dropped command count
+     */
+    public int getDroppedCommands() {
+        return droppedCommands.get();
+    }
+
+    /**
+     * Stop the audio thread, which closes the device, and free the loaded music.
+     */
+    public void cleanup() {
+
+        running = false;
+        try {
+            audioThread.join(1000);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Voices still decode from the track data until the audio thread has closed the device
+        if (audioThread.isAlive()) {
+            System.err.println("Audio thread did not stop, the music data is not freed");
+            return;
+        }
+        for (Music music : tracks) {
+            memFree(music.data);
+        }
+        tracks.clear();
+
+    }
+
+    @Override
+    public void run() {
+
+        try {
+            openDevice();
+            while (running) {
+                processCommands();
+                if (voices != null) {
+                    updateVoices();
+                }
+                LockSupport.parkNanos(UPDATE_INTERVAL_NANOS);
+            }
+        }
+        catch (Exception excp) {
+            excp.printStackTrace();
+        }
+        finally {
+            closeDevice();
+        }
+
+    }
+
+    private int newHandle() {
+
+        // Handles are never 0, so 0 can mean no sound
+        int handle = nextHandle.incrementAndGet();
+        while (handle == 0) {
+            handle = nextHandle.incrementAndGet();
+        }
+        return handle;
+
+    }
+
+    private void send(int type, int handle, float gain) {
+
+        AudioCommand command = commands.claim();
+        if (command == null) {
+            droppedCommands.incrementAndGet();
+            return;
+        }
+        command.type = type;
+        command.handle = handle;
+        command.gain = gain;
+        commands.publish(command);
+
+    }
+
+    private void openDevice() {
+
+        String deviceName = System.getProperty("audio.device");
+        device = alcOpenDevice(deviceName);
+        if (device == NULL) {
+            System.err.println("Could not open audio device " + (deviceName != null ? deviceName : "(default)")
+                + ", sound is disabled");
+            return;
+        }
+        context = alcCreateContext(device, (IntBuffer) null);
+        alcMakeContextCurrent(context);
+        AL.createCapabilities(ALC.createCapabilities(device));
+
+        voices = new Voice[MAX_VOICES];
+        for (int i = 0; i < MAX_VOICES; i++) {
+            voices[i] = new Voice(STREAM_BUFFERS);
+        }
+        chunk = memAllocShort(STREAM_CHUNK_FRAMES * 2);
+        vorbisInfo = STBVorbisInfo.malloc();
+
+    }
+
+    private void closeDevice() {
+
+        // Free whatever was still waiting in the ring
+        processCommands();
+
+        if (voices != null) {
+            for (Voice voice : voices) {
+                voice.cleanup();
+            }
+            voices = null;
+        }
+        for (Sound sound : sounds) {
+            alDeleteBuffers(sound.bufferId);
+        }
+        sounds.clear();
+        if (chunk != null) {
+            memFree(chunk);
+            vorbisInfo.free();
+            chunk = null;
+        }
+        if (device != NULL) {
+            alcMakeContextCurrent(NULL);
+            alcDestroyContext(context);
+            alcCloseDevice(device);
+            device = NULL;
+        }
+
+    }
+
+    private void processCommands() {
+
+        AudioCommand command;
+        while ((command = commands.peek()) != null) {
+            switch (command.type) {
+                case AudioCommand.LOAD_SOUND:
+                    uploadSound(command.sound);
+                    break;
+                case AudioCommand.PLAY_SOUND:
+                    playSound(command);
+                    break;
+                case AudioCommand.PLAY_MUSIC:
+                    playMusic(command);
+                    break;
+                case AudioCommand.STOP:
+                    Voice voice = findVoice(command.handle);
+                    if (voice != null) {
+                        voice.stop();
+                    }
+                    break;
+                case AudioCommand.SET_GAIN:
+                    Voice gainVoice = findVoice(command.handle);
+                    if (gainVoice != null) {
+                        alSourcef(gainVoice.sourceId, AL_GAIN, command.gain);
+                    }
+                    break;
+                case AudioCommand.UNLOAD_SOUND:
+                    freeSound(command.sound);
+                    break;
+                default:
+                    break;
+            }
+            command.clear();
+            commands.release();
+        }
+
+    }
+
+    private void uploadSound(Sound sound) {
+
+        if (voices != null) {
+            sound.bufferId = alGenBuffers();
+            alBufferData(sound.bufferId, format(sound.getChannels()), sound.pcm, sound.getSampleRate());
+            sounds.add(sound);
+        }
+        memFree(sound.pcm);
+        sound.pcm = null;
+
+    }
+
+    private void freeSound(Sound sound) {
+
+        if (sound.bufferId == 0) {
+            return;
+        }
+        for (Voice voice : voices) {
+            if (voice.sound == sound) {
+                voice.stop();
+            }
+        }
+        alDeleteBuffers(sound.bufferId);
+        sound.bufferId = 0;
+        sounds.remove(sound);
+
+    }
+
+    private void playSound(AudioCommand command) {
+
+        if (command.sound.bufferId == 0) {
+            return;
+        }
+        Voice voice = acquireVoice(command.priority);
+        if (voice == null) {
+            return;
+        }
+
+        alSourcei(voice.sourceId, AL_BUFFER, command.sound.bufferId);
+        alSourcef(voice.sourceId, AL_GAIN, command.gain);
+        alSourcef(voice.sourceId, AL_PITCH, command.pitch);
+        alSourcePlay(voice.sourceId);
+        voice.sound = command.sound;
+        start(voice, command);
+
+    }
+
+    private void playMusic(AudioCommand command) {
+
+        if (voices == null) {
+            return;
+        }
+
+        long decoder;
+        try (MemoryStack stack = stackPush()) {
+            IntBuffer error = stack.mallocInt(1);
+            decoder = stb_vorbis_open_memory(command.music.data, error, null);
+            if (decoder == NULL) {
+                System.err.println("Could not open music " + command.music.getName() + ", error " + error.get(0));
+                return;
+            }
+        }
+
+        stb_vorbis_get_info(decoder, vorbisInfo);
+        if (vorbisInfo.channels() > 2) {
+            System.err.println("Only mono and stereo music is supported: " + command.music.getName());
+            stb_vorbis_close(decoder);
+            return;
+        }
+
+        Voice voice = acquireVoice(command.priority);
+        if (voice == null) {
+            stb_vorbis_close(decoder);
+            return;
+        }
+        voice.decoder = decoder;
+        voice.channels = vorbisInfo.channels();
+        voice.sampleRate = vorbisInfo.sample_rate();
+        voice.loop = command.loop;
+        voice.endOfStream = false;
+
+        // Fill and queue every stream buffer before starting
+        for (int buffer : voice.streamBuffers) {
+            if (!fill(voice, buffer)) {
+                break;
+            }
+            alSourceQueueBuffers(voice.sourceId, buffer);
+        }
+        alSourcef(voice.sourceId, AL_GAIN, command.gain);
+        alSourcef(voice.sourceId, AL_PITCH, 1.0f);
+        alSourcePlay(voice.sourceId);
+        start(voice, command);
+
+    }
+
+    private static void start(Voice voice, AudioCommand command) {
+        voice.active = true;
+        voice.handle = command.handle;
+        voice.priority = command.priority;
+    }
+
+    /**
+     * Refill the played chunks of every stream and free the voices that have finished.
+     */
+    private void updateVoices() {
+
+        for (Voice voice : voices) {
+
+            if (!voice.active) {
+                continue;
+            }
+
+            if (voice.isStreaming()) {
+
+                int processed = alGetSourcei(voice.sourceId, AL_BUFFERS_PROCESSED);
+                while (processed-- > 0) {
+                    int buffer = alSourceUnqueueBuffers(voice.sourceId);
+                    if (!voice.endOfStream && fill(voice, buffer)) {
+                        alSourceQueueBuffers(voice.sourceId, buffer);
+                    }
+                }
+
+                // A stream that ran dry before we refilled it stops, so start it again if there is anything left
+                if (alGetSourcei(voice.sourceId, AL_SOURCE_STATE) != AL_PLAYING) {
+                    if (alGetSourcei(voice.sourceId, AL_BUFFERS_QUEUED) > 0) {
+                        alSourcePlay(voice.sourceId);
+                    }
+                    else {
+                        voice.stop();
+                    }
+                }
+
+            }
+            else if (alGetSourcei(voice.sourceId, AL_SOURCE_STATE) == AL_STOPPED) {
+                voice.stop();
+            }
+
+        }
+
+    }
+
+    /**
+     * Decode the next chunk of a stream into a buffer, starting over at the end of a looping stream.
+     *
+     * @return false if the stream has ended
+     */
+    private boolean fill(Voice voice, int buffer) {
+
+        chunk.clear().limit(STREAM_CHUNK_FRAMES * voice.channels);
+        int frames = stb_vorbis_get_samples_short_interleaved(voice.decoder, voice.channels, chunk);
+        if (frames == 0 && voice.loop) {
+            stb_vorbis_seek_start(voice.decoder);
+            frames = stb_vorbis_get_samples_short_interleaved(voice.decoder, voice.channels, chunk);
+        }
+        if (frames == 0) {
+            voice.endOfStream = true;
+            return false;
+        }
+
+        chunk.limit(frames * voice.channels);
+        alBufferData(buffer, format(voice.channels), chunk, voice.sampleRate);
+        return true;
+
+    }
+
+    /**
+     * Find a voice for a new sound. A free voice is used if there is one, otherwise the voice with the lowest priority, as long
+     * as that is lower than the new sound's.
+     */
+    private Voice acquireVoice(int priority) {
+
+        if (voices == null) {
+            return null;
+        }
+
+        Voice lowest = null;
+        for (Voice voice : voices) {
+            if (!voice.active) {
+                return voice;
+            }
+            if (lowest == null || voice.priority < lowest.priority) {
+                lowest = voice;
+            }
+        }
+        if (lowest.priority >= priority) {
+            return null;
+        }
+        lowest.stop();
+        return lowest;
+
+    }
+
+    private Voice findVoice(int handle) {
+
+        if (voices == null) {
+            return null;
+        }
+        for (Voice voice : voices) {
+            if (voice.active && voice.handle == handle) {
+                return voice;
+            }
+        }
+        return null;
+
+    }
+
+    private static int format(int channels) {
+        return channels == 1 ? AL_FORMAT_MONO16 : AL_FORMAT_STEREO16;
+    }
+
+}
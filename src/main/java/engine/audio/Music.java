@@ -0,0 +1,25 @@
+package engine.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A long track that is streamed. Only the compressed Ogg Vorbis file is kept in memory, every playback decodes it in small
+ * chunks on the audio thread.
+ */
+public class Music {
+
+    private final String name;
+
+    // The encoded file, read by the decoders of every voice playing it
+    final ByteBuffer data;
+
+    Music(String name, ByteBuffer data) {
+        this.name = name;
+        this.data = data;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+}
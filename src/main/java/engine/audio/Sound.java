@@ -0,0 +1,38 @@
+package engine.audio;
+
+import java.nio.ShortBuffer;
+
+/**
+ * A short sound effect, decoded completely when it is loaded so it can be played any number of times at once. The decoded
+ * samples are handed to the audio thread, which copies them into an OpenAL buffer and frees them.
+ */
+public class Sound {
+
+    private final String name;
+    private final int channels;
+    private final int sampleRate;
+
+    // Owned by the audio thread after the load command has been sent
+    ShortBuffer pcm;
+    int bufferId;
+
+    Sound(String name, ShortBuffer pcm, int channels, int sampleRate) {
+        this.name = name;
+        this.pcm = pcm;
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+}
@@ -0,0 +1,70 @@
+package engine.audio;
+
+import static org.lwjgl.openal.AL10.AL_BUFFER;
+import static org.lwjgl.openal.AL10.alDeleteBuffers;
+import static org.lwjgl.openal.AL10.alDeleteSources;
+import static org.lwjgl.openal.AL10.alGenBuffers;
+import static org.lwjgl.openal.AL10.alGenSources;
+import static org.lwjgl.openal.AL10.alSourceStop;
+import static org.lwjgl.openal.AL10.alSourcei;
+import static org.lwjgl.stb.STBVorbis.stb_vorbis_close;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * One OpenAL source and what it is playing. Only used on the audio thread.
+ */
+class Voice {
+
+    final int sourceId;
+
+    // The buffers a stream cycles through, so a voice never needs to allocate them while playing
+    final int[] streamBuffers;
+
+    int handle;
+    int priority;
+    boolean active;
+
+    // Only set while playing an effect
+    Sound sound;
+
+    // Only set while streaming music
+    long decoder = NULL;
+    int channels;
+    int sampleRate;
+    boolean loop;
+    boolean endOfStream;
+
+    Voice(int streamBufferCount) {
+        sourceId = alGenSources();
+        streamBuffers = new int[streamBufferCount];
+        alGenBuffers(streamBuffers);
+    }
+
+    boolean isStreaming() {
+        return decoder != NULL;
+    }
+
+    /**
+     * Stop playing and detach every buffer, so the voice can be reused.
+     */
+    void stop() {
+
+        alSourceStop(sourceId);
+        alSourcei(sourceId, AL_BUFFER, 0);
+        if (decoder != NULL) {
+            stb_vorbis_close(decoder);
+            decoder = NULL;
+        }
+        active = false;
+        handle = 0;
+        sound = null;
+
+    }
+
+    void cleanup() {
+        stop();
+        alDeleteSources(sourceId);
+        alDeleteBuffers(streamBuffers);
+    }
+
+}
@@ -0,0 +1,225 @@
+package engine.graph;
+
+import static org.lwjgl.opengl.GL11.GL_RGBA;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL11.glReadPixels;
+import static org.lwjgl.opengl.GL15.GL_STREAM_READ;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL15.glUnmapBuffer;
+import static org.lwjgl.opengl.GL21.GL_PIXEL_PACK_BUFFER;
+import static org.lwjgl.opengl.GL30.GL_MAP_READ_BIT;
+import static org.lwjgl.opengl.GL30.glMapBufferRange;
+import static org.lwjgl.opengl.GL32.GL_SYNC_FLUSH_COMMANDS_BIT;
+import static org.lwjgl.opengl.GL32.GL_SYNC_GPU_COMMANDS_COMPLETE;
+import static org.lwjgl.opengl.GL32.GL_TIMEOUT_EXPIRED;
+import static org.lwjgl.opengl.GL32.GL_WAIT_FAILED;
+import static org.lwjgl.opengl.GL32.glClientWaitSync;
+import static org.lwjgl.opengl.GL32.glDeleteSync;
+import static org.lwjgl.opengl.GL32.glFenceSync;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memCopy;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads frames back from the GPU without stalling the pipeline. Each capture copies the current read framebuffer into the next
+ * of a few pixel buffer objects and puts a fence after it. The copy runs asynchronously, and the buffer is only mapped once its
+ * fence has signalled, usually two or three frames later. The mapped pixels are copied into a pooled off-heap buffer and handed
+ * to the consumer on a worker thread, so encoding never runs on the GL thread.
+ *
+ * If all pixel buffers are still in flight, or the worker has fallen behind and no pooled buffer is free, frames are dropped
+ * and counted rather than waited for.
+ */
+public class FrameCapture {
+
+    public static final int PBO_COUNT = 3;
+
+    private final IFrameConsumer consumer;
+    private final ExecutorService worker;
+
+    // Off-heap copies handed to the worker, returned to the pool once consumed
+    private final Queue<ByteBuffer> freeBuffers = new ConcurrentLinkedQueue<>();
+    private int allocatedBuffers;
+
+    // The pixel buffer ring, a slot is pending from capture until it has been handed off
+    private final int[] pboIds = new int[PBO_COUNT];
+    private final int[] pboSizes = new int[PBO_COUNT];
+    private final long[] fences = new long[PBO_COUNT];
+    private final long[] frames = new long[PBO_COUNT];
+    private final int[] widths = new int[PBO_COUNT];
+    private final int[] heights = new int[PBO_COUNT];
+    private int oldestSlot;
+    private int pending;
+
+    private int droppedFrames;
+
+    public FrameCapture(IFrameConsumer consumer) {
+
+        this.consumer = consumer;
+        worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "FRAME_CAPTURE_THREAD");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    }
+
+    /**
+     * Create the pixel buffers. Must be called with the OpenGL context current.
+     */
+    public void init() {
+
+        for (int i = 0; i < PBO_COUNT; i++) {
+            pboIds[i] = glGenBuffers();
+        }
+
+    }
+
+    /**
+     * Start an asynchronous copy of the bound read framebuffer. Call poll every frame to hand off the finished copies.
+     *
+     * @param width the width to read
+     * @param height the height to read
+     * @param frame a frame number passed on to the consumer
+     */
+    public void capture(int width, int height, long frame) {
+
+        if (pending == PBO_COUNT) {
+            droppedFrames++;
+            return;
+        }
+
+        int slot = (oldestSlot + pending) % PBO_COUNT;
+        int size = width * height * 4;
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, pboIds[slot]);
+        if (pboSizes[slot] != size) {
+            glBufferData(GL_PIXEL_PACK_BUFFER, size, GL_STREAM_READ);
+            pboSizes[slot] = size;
+        }
+
+        // With a pack buffer bound the last argument is an offset into it, so this returns immediately
+        glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, 0);
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+
+        fences[slot] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        frames[slot] = frame;
+        widths[slot] = width;
+        heights[slot] = height;
+        pending++;
+
+    }
+
+    /**
+     * Hand off every capture whose copy has finished, oldest first. Never waits for the GPU.
+     */
+    public void poll() {
+        handOff(0, 0);
+    }
+
+    public int getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Flush the captures still in flight, wait for the worker to finish and free the buffers.
+     */
+    public void cleanup() {
+
+        // The game is shutting down, so it is fine to wait for the last few frames
+        handOff(GL_SYNC_FLUSH_COMMANDS_BIT, TimeUnit.SECONDS.toNanos(1));
+        while (pending > 0) {
+            glDeleteSync(fences[oldestSlot]);
+            oldestSlot = (oldestSlot + 1) % PBO_COUNT;
+            pending--;
+        }
+
+        worker.execute(consumer::cleanup);
+        worker.shutdown();
+        try {
+            worker.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+
+        ByteBuffer buffer;
+        while ((buffer = freeBuffers.poll()) != null) {
+            memFree(buffer);
+        }
+        glDeleteBuffers(pboIds);
+
+    }
+
+    private void handOff(int waitFlags, long timeout) {
+
+        while (pending > 0) {
+
+            int slot = oldestSlot;
+            int status = glClientWaitSync(fences[slot], waitFlags, timeout);
+            if (status == GL_TIMEOUT_EXPIRED || status == GL_WAIT_FAILED) {
+                return;
+            }
+
+            // Grow the pool up to one buffer per pixel buffer, after that wait for the worker to return one
+            int size = pboSizes[slot];
+            ByteBuffer pixels = freeBuffers.poll();
+            if (pixels == null) {
+                if (allocatedBuffers == PBO_COUNT) {
+                    return;
+                }
+                pixels = memAlloc(size);
+                allocatedBuffers++;
+            }
+            else if (pixels.capacity() < size) {
+                memFree(pixels);
+                pixels = memAlloc(size);
+            }
+            pixels.clear().limit(size);
+
+            // Copy out of the mapped buffer so it can be unmapped and reused right away
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, pboIds[slot]);
+            ByteBuffer mapped = glMapBufferRange(GL_PIXEL_PACK_BUFFER, 0, size, GL_MAP_READ_BIT);
+            if (mapped != null) {
+                memCopy(memAddress(mapped), memAddress(pixels), size);
+                glUnmapBuffer(GL_PIXEL_PACK_BUFFER);
+            }
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+
+            glDeleteSync(fences[slot]);
+            oldestSlot = (oldestSlot + 1) % PBO_COUNT;
+            pending--;
+
+            if (mapped == null) {
+                freeBuffers.add(pixels);
+                droppedFrames++;
+                continue;
+            }
+
+            ByteBuffer frame = pixels;
+            int width = widths[slot];
+            int height = heights[slot];
+            long frameNumber = frames[slot];
+            worker.execute(() -> {
+                try {
+                    consumer.consume(frame, width, height, frameNumber);
+                }
+                finally {
+                    freeBuffers.add(frame);
+                }
+            });
+
+        }
+
+    }
+
+}
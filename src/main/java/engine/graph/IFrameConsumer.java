@@ -0,0 +1,27 @@
+package engine.graph;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives frames read back by a FrameCapture. Called on the capture worker thread, so implementations are free to do slow
+ * work such as encoding or writing to disk.
+ */
+public interface IFrameConsumer {
+
+    /**
+     * Handle one captured frame. The pixels are tightly packed RGBA rows, starting with the bottom row as OpenGL returns them.
+     * The buffer is reused once this method returns, so copy anything that needs to be kept.
+     *
+     * @param pixels the pixel data
+     * @param width the frame width
+     * @param height the frame height
+     * @param frame the frame number passed to capture
+     */
+    void consume(ByteBuffer pixels, int width, int height, long frame);
+
+    /**
+     * Free any resources once the capture has shut down. Called on the worker thread after the last frame.
+     */
+    void cleanup();
+
+}
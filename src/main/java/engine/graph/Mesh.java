@@ -25,10 +25,23 @@ public class Mesh {
     private final int vaoId;
     private final int posVboId;
     private final int colourVboId;
+    private final int textCoordsVboId;
     private final int idxVboId;
     private final int vertexCount;
 
     public Mesh(float[] positions, float[] colours, int[] indices) {
+        this(positions, colours, null, indices);
+    }
+
+    /**
+     * Create a mesh that can be textured. The texture coordinates are bound to attribute 2, with two floats per vertex.
+     *
+     * @param positions the vertex positions
+     * @param colours the vertex colours
+     * @param textCoords the texture coordinates, or null for an untextured mesh
+     * @param indices the indices
+     */
+    public Mesh(float[] positions, float[] colours, float[] textCoords, int[] indices) {
 
         FloatBuffer posBuffer = null;
         IntBuffer indicesBuffer = null;
@@ -60,6 +73,20 @@ public class Mesh {
             memFree(colourBuffer);
             glVertexAttribPointer(1, 3, GL_FLOAT, false, 0, 0);
 
+            // Texture coordinates VBO
+            if (textCoords != null) {
+                textCoordsVboId = glGenBuffers();
+                FloatBuffer textCoordsBuffer = memAllocFloat(textCoords.length);
+                textCoordsBuffer.put(textCoords).flip();
+                glBindBuffer(GL_ARRAY_BUFFER, textCoordsVboId);
+                glBufferData(GL_ARRAY_BUFFER, textCoordsBuffer, GL_STATIC_DRAW);
+                memFree(textCoordsBuffer);
+                glVertexAttribPointer(2, 2, GL_FLOAT, false, 0, 0);
+            }
+            else {
+                textCoordsVboId = 0;
+            }
+
             // Index VBO
             idxVboId = glGenBuffers();
             indicesBuffer = memAllocInt(indices.length);
@@ -94,6 +121,10 @@ public class Mesh {
         return vertexCount;
     }
 
+    public boolean hasTextCoords() {
+        return textCoordsVboId != 0;
+    }
+
     public void cleanUp() {
 
         // Disable the vertex attribute array
@@ -103,6 +134,9 @@ public class Mesh {
         glBindBuffer(GL_ARRAY_BUFFER, 0);
         glDeleteBuffers(posVboId);
         glDeleteBuffers(colourVboId);
+        if (textCoordsVboId != 0) {
+            glDeleteBuffers(textCoordsVboId);
+        }
         glDeleteBuffers(idxVboId);
 
         // Delete the VAO
@@ -0,0 +1,65 @@
+package engine.graph;
+
+import static org.lwjgl.stb.STBImageWrite.stbi_write_png;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memCopy;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes captured frames to numbered PNG files with stb_image_write.
+ */
+public class PngFrameWriter implements IFrameConsumer {
+
+    private final File directory;
+
+    // Only touched by the capture worker thread
+    private ByteBuffer row;
+
+    public PngFrameWriter(File directory) {
+        this.directory = directory;
+        directory.mkdirs();
+    }
+
+    @Override
+    public void consume(ByteBuffer pixels, int width, int height, long frame) {
+
+        // OpenGL returns the bottom row first, so flip the rows in place before encoding
+        int stride = width * 4;
+        if (row == null || row.capacity() < stride) {
+            if (row != null) {
+                memFree(row);
+            }
+            row = memAlloc(stride);
+        }
+        long rowAddress = memAddress(row);
+        long pixelsAddress = memAddress(pixels);
+        for (int top = 0, bottom = height - 1; top < bottom; top++, bottom--) {
+            long topAddress = pixelsAddress + (long) top * stride;
+            long bottomAddress = pixelsAddress + (long) bottom * stride;
+            memCopy(topAddress, rowAddress, stride);
+            memCopy(bottomAddress, topAddress, stride);
+            memCopy(rowAddress, bottomAddress, stride);
+        }
+
+        String fileName = new File(directory, String.format("frame_%06d.png", frame)).getPath();
+        if (!stbi_write_png(fileName, width, height, 4, pixels, stride)) {
+            System.err.println("Could not write frame " + fileName);
+        }
+
+    }
+
+    @Override
+    public void cleanup() {
+
+        if (row != null) {
+            memFree(row);
+            row = null;
+        }
+
+    }
+
+}
@@ -0,0 +1,181 @@
+package engine.graph;
+
+/**
+ * Chooses the fraction of the window resolution the scene is rendered at, so the frame time stays within a budget. It is fed
+ * the time each frame took to render, and lowers the scale when frames run over the budget and raises it again once there is
+ * time to spare.
+ *
+ * The scale only changes after the frame time has been outside a band around the budget for several frames in a row, and is
+ * then left alone for a while so the new scale can show up in the measurements. Without that hysteresis, noise in the frame
+ * times and the latency of GPU timings would make the scale oscillate. Scales are multiples of a fixed step, so they don't
+ * creep by tiny amounts.
+ */
+public class ResolutionScaler {
+
+    public static final float DEFAULT_MIN_SCALE = 0.5f;
+    public static final float DEFAULT_MAX_SCALE = 1.0f;
+    public static final float SCALE_STEP = 0.05f;
+
+    private final float minScale;
+    private final float maxScale;
+    private final float budgetMillis;
+
+    // Lower the scale above upperRatio of the budget, raise it below lowerRatio
+    private float lowerRatio = 0.7f;
+    private float upperRatio = 0.95f;
+    private int settleFrames = 8;
+    private int cooldownFrames = 20;
+
+    private float scale;
+    private float smoothedMillis;
+    private int framesOver;
+    private int framesUnder;
+    private int cooldown;
+    private int changes;
+
+    /**
+     * Create a scaler that starts at the maximum scale.
+     *
+     * @param minScale the lowest fraction of the window resolution to render at
+     * @param maxScale the highest fraction of the window resolution to render at
+     * @param budgetMillis the time a frame may take, usually 1000 / target FPS
+     */
+    public ResolutionScaler(float minScale, float maxScale, float budgetMillis) {
+
+        if (minScale <= 0 || minScale > maxScale) {
+            throw new IllegalArgumentException("Invalid resolution scale range: " + minScale + " to " + maxScale);
+        }
+        this.minScale = minScale;
+        this.maxScale = maxScale;
+        this.budgetMillis = budgetMillis;
+        scale = maxScale;
+
+    }
+
+    /**
+     * Set how far the frame time may stray from the budget before the scale changes.
+     *
+     * @param lowerRatio raise the scale when frames take less than this fraction of the budget
+     * @param upperRatio lower the scale when frames take more than this fraction of the budget
+     * @param settleFrames the number of frames in a row that must be outside the band
+     * @param cooldownFrames the number of frames to wait after a change before measuring again
+     */
+    public void setHysteresis(float lowerRatio, float upperRatio, int settleFrames, int cooldownFrames) {
+
+        if (lowerRatio <= 0 || lowerRatio >= upperRatio) {
+            throw new IllegalArgumentException("The lower ratio must be positive and below the upper ratio");
+        }
+        this.lowerRatio = lowerRatio;
+        this.upperRatio = upperRatio;
+        this.settleFrames = Math.max(settleFrames, 1);
+        this.cooldownFrames = Math.max(cooldownFrames, 0);
+
+    }
+
+    /**
+     * Feed the measured render time of a frame and adjust the scale if needed.
+     *
+     * @param frameMillis the time the frame took to render, excluding waiting for vsync
+     */
+    public void update(float frameMillis) {
+
+        smoothedMillis = smoothedMillis == 0 ? frameMillis : smoothedMillis * 0.8f + frameMillis * 0.2f;
+        if (cooldown > 0) {
+            cooldown--;
+            return;
+        }
+
+        if (smoothedMillis > budgetMillis * upperRatio) {
+            framesOver++;
+            framesUnder = 0;
+        }
+        else if (smoothedMillis < budgetMillis * lowerRatio) {
+            framesUnder++;
+            framesOver = 0;
+        }
+        else {
+            framesOver = 0;
+            framesUnder = 0;
+        }
+
+        if (framesOver >= settleFrames && scale > minScale) {
+
+            // The cost grows with the number of pixels, the square of the scale, so aim for the middle of the band at once
+            float target = budgetMillis * (lowerRatio + upperRatio) * 0.5f;
+            float newScale = scale * (float) Math.sqrt(target / smoothedMillis);
+            setScale(Math.min(quantize(newScale), scale - SCALE_STEP));
+
+        }
+        else if (framesUnder >= settleFrames && scale < maxScale) {
+
+            // Going up is a guess at how much room there is, so only take one step at a time
+            setScale(quantize(scale + SCALE_STEP));
+
+        }
+
+    }
+
+    /**
+     * The fraction of the window resolution to render the next frame at.
+     *
+     * @return the scale
+     */
+    public float getScale() {
+        return scale;
+    }
+
+    /**
+     * Scale a window dimension, never going below one pixel.
+     */
+    public int scale(int size) {
+        return Math.max(Math.round(size * scale), 1);
+    }
+
+    public float getMinScale() {
+        return minScale;
+    }
+
+    public float getMaxScale() {
+        return maxScale;
+    }
+
+    /**
+     * The smoothed frame time the last decision was based on.
+     *
+     * @return the frame time in milliseconds
+     */
+    public float getSmoothedMillis() {
+        return smoothedMillis;
+    }
+
+    /**
+     * The number of times the scale has changed. If this keeps growing under a steady load, the hysteresis is too narrow.
+     *
+     * @return the change count
+     */
+    public int getChanges() {
+        return changes;
+    }
+
+    private void setScale(float newScale) {
+
+        newScale = Math.max(minScale, Math.min(maxScale, newScale));
+        if (newScale == scale) {
+            return;
+        }
+        scale = newScale;
+        changes++;
+
+        // Earlier frame times were measured at the old scale, so start over
+        smoothedMillis = 0;
+        framesOver = 0;
+        framesUnder = 0;
+        cooldown = cooldownFrames;
+
+    }
+
+    private static float quantize(float value) {
+        return (float) Math.floor(value / SCALE_STEP + 1e-3f) * SCALE_STEP;
+    }
+
+}
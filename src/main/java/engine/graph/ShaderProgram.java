@@ -15,15 +15,31 @@ import static org.lwjgl.opengl.GL20.glGetProgramInfoLog;
 import static org.lwjgl.opengl.GL20.glGetProgrami;
 import static org.lwjgl.opengl.GL20.glGetShaderInfoLog;
 import static org.lwjgl.opengl.GL20.glGetShaderi;
+import static org.lwjgl.opengl.GL20.glGetUniformLocation;
 import static org.lwjgl.opengl.GL20.glLinkProgram;
 import static org.lwjgl.opengl.GL20.glShaderSource;
+import static org.lwjgl.opengl.GL20.glUniform1f;
+import static org.lwjgl.opengl.GL20.glUniform1i;
+import static org.lwjgl.opengl.GL20.glUniform2f;
+import static org.lwjgl.opengl.GL20.glUniformMatrix4fv;
 import static org.lwjgl.opengl.GL20.glUseProgram;
 import static org.lwjgl.opengl.GL20.glValidateProgram;
+import static org.lwjgl.opengl.GL20.nglUniformMatrix4fv;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+
+import engine.math.Matrix4f;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import org.lwjgl.system.MemoryStack;
 
 public class ShaderProgram {
 
     private final int programId;
 
+    private final Map<String, Integer> uniforms = new HashMap<>();
+
     private int vertexShaderId;
 
     private int fragmentShaderId;
@@ -112,6 +128,58 @@ public class ShaderProgram {
 
     }
 
+    /**
+     * Look up the location of a uniform so it can be set by name. Must be called after the program is linked.
+     *
+     * @param uniformName the uniform name
+     * @throws Exception if the uniform doesn't exist or was optimised away
+     */
+    public void createUniform(String uniformName) throws Exception {
+
+        int uniformLocation = glGetUniformLocation(programId, uniformName);
+        if (uniformLocation < 0) {
+            throw new Exception("Could not find uniform: " + uniformName);
+        }
+        uniforms.put(uniformName, uniformLocation);
+
+    }
+
+    /**
+     * Set an integer uniform. Samplers are set this way, to the texture unit they read from.
+     *
+     * @param uniformName the uniform name
+     * @param value the value
+     */
+    public void setUniform(String uniformName, int value) {
+        glUniform1i(uniforms.get(uniformName), value);
+    }
+
+    public void setUniform(String uniformName, float value) {
+        glUniform1f(uniforms.get(uniformName), value);
+    }
+
+    public void setUniform(String uniformName, float x, float y) {
+        glUniform2f(uniforms.get(uniformName), x, y);
+    }
+
+    public void setUniform(String uniformName, Matrix4f value) {
+        try (MemoryStack stack = stackPush()) {
+            glUniformMatrix4fv(uniforms.get(uniformName), false, value.get(stack.mallocFloat(16)));
+        }
+    }
+
+    /**
+     * Set a matrix uniform from 16 floats at the position of an off-heap buffer, such as one of the matrices a TransformBatch
+     * wrote.
+     *
+     * @param uniformName the uniform name
+     * @param matrices the buffer holding the matrix in column major order
+     * @param index the index of the matrix, counted from the position of the buffer
+     */
+    public void setUniform(String uniformName, FloatBuffer matrices, int index) {
+        nglUniformMatrix4fv(uniforms.get(uniformName), 1, false, memAddress(matrices) + index * 16L * Float.BYTES);
+    }
+
     /**
      * Activate the program for rendering.
      */
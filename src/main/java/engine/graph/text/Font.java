@@ -0,0 +1,139 @@
+package engine.graph.text;
+
+import static org.lwjgl.stb.STBTruetype.stbtt_GetCodepointBitmapBox;
+import static org.lwjgl.stb.STBTruetype.stbtt_GetCodepointHMetrics;
+import static org.lwjgl.stb.STBTruetype.stbtt_GetCodepointKernAdvance;
+import static org.lwjgl.stb.STBTruetype.stbtt_GetFontVMetrics;
+import static org.lwjgl.stb.STBTruetype.stbtt_InitFont;
+import static org.lwjgl.stb.STBTruetype.stbtt_MakeCodepointBitmap;
+import static org.lwjgl.stb.STBTruetype.stbtt_ScaleForPixelHeight;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+import engine.Utils;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.lwjgl.stb.STBTTFontinfo;
+
+/**
+ * A TrueType font at one pixel size, read with stb_truetype. Glyphs are rasterized on demand into the shared GlyphAtlas of the
+ * TextRenderer. The font also keeps the shaped runs of the strings drawn with it, so labels that don't change are only laid
+ * out once. Must only be used on the GL thread.
+ */
+public class Font {
+
+    public static final int RUN_CACHE_SIZE = 1024;
+
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private final int id;
+    private final float pixelHeight;
+
+    // stb_truetype reads the font data directly, so it has to stay allocated for the lifetime of the font
+    private final ByteBuffer data;
+    private final STBTTFontinfo info;
+
+    private final float scale;
+    private final float ascent;
+    private final float lineHeight;
+
+    // Scratch arrays for the stb calls
+    private final int[] metric0 = new int[1];
+    private final int[] metric1 = new int[1];
+    private final int[] metric2 = new int[1];
+    private final int[] metric3 = new int[1];
+
+    // The least recently drawn runs are dropped once the cache is full
+    private final Map<String, TextRun> runs = new LinkedHashMap<String, TextRun>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TextRun> eldest) {
+            return size() > RUN_CACHE_SIZE;
+        }
+    };
+
+    public Font(String resource, float pixelHeight) throws Exception {
+
+        this.id = nextId.getAndIncrement();
+        this.pixelHeight = pixelHeight;
+
+        data = Utils.loadResourceBytes(resource);
+        info = STBTTFontinfo.create();
+        if (!stbtt_InitFont(info, data)) {
+            memFree(data);
+            throw new Exception("Could not load font: " + resource);
+        }
+
+        scale = stbtt_ScaleForPixelHeight(info, pixelHeight);
+        stbtt_GetFontVMetrics(info, metric0, metric1, metric2);
+        ascent = metric0[0] * scale;
+        lineHeight = (metric0[0] - metric1[0] + metric2[0]) * scale;
+
+    }
+
+    public float getPixelHeight() {
+        return pixelHeight;
+    }
+
+    public float getLineHeight() {
+        return lineHeight;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    /**
+     * Get the shaped run of a string, laying it out the first time it is drawn.
+     */
+    TextRun getRun(String text) {
+
+        TextRun run = runs.get(text);
+        if (run == null) {
+            run = new TextRun();
+            run.shape(this, text);
+            runs.put(text, run);
+        }
+        return run;
+
+    }
+
+    float getAscent() {
+        return ascent;
+    }
+
+    float getAdvance(int codepoint) {
+        stbtt_GetCodepointHMetrics(info, codepoint, metric0, metric1);
+        return metric0[0] * scale;
+    }
+
+    float getKerning(int codepoint, int nextCodepoint) {
+        return stbtt_GetCodepointKernAdvance(info, codepoint, nextCodepoint) * scale;
+    }
+
+    /**
+     * Get the pixel bounds of a glyph relative to the pen position on the baseline, y pointing down.
+     */
+    void getBitmapBox(int codepoint, int[] box) {
+
+        stbtt_GetCodepointBitmapBox(info, codepoint, scale, scale, metric0, metric1, metric2, metric3);
+        box[0] = metric0[0];
+        box[1] = metric1[0];
+        box[2] = metric2[0];
+        box[3] = metric3[0];
+
+    }
+
+    /**
+     * Render a glyph as 8 bit coverage into the given buffer.
+     */
+    void rasterize(int codepoint, ByteBuffer bitmap, int width, int height, int stride) {
+        stbtt_MakeCodepointBitmap(info, bitmap, width, height, stride, scale, scale, codepoint);
+    }
+
+    public void cleanup() {
+        runs.clear();
+        memFree(data);
+    }
+
+}
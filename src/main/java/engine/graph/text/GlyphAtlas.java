@@ -0,0 +1,302 @@
+package engine.graph.text;
+
+import static org.lwjgl.opengl.GL11.GL_LINEAR;
+import static org.lwjgl.opengl.GL11.GL_RED;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_MAG_FILTER;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_MIN_FILTER;
+import static org.lwjgl.opengl.GL11.GL_UNPACK_ALIGNMENT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL11.glBindTexture;
+import static org.lwjgl.opengl.GL11.glDeleteTextures;
+import static org.lwjgl.opengl.GL11.glGenTextures;
+import static org.lwjgl.opengl.GL11.glPixelStorei;
+import static org.lwjgl.opengl.GL11.glTexImage2D;
+import static org.lwjgl.opengl.GL11.glTexParameteri;
+import static org.lwjgl.opengl.GL11.glTexSubImage2D;
+import static org.lwjgl.opengl.GL30.GL_R8;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A single channel texture of equally sized cells, each holding one rasterized glyph of any font. Because every cell fits any
+ * glyph, a glyph can always replace the least recently used one, so the atlas never has to be repacked.
+ *
+ * Glyphs are looked up by font and codepoint in an open addressing table of primitive keys, so drawing text doesn't allocate.
+ * A glyph that was used since the last batch was drawn is never evicted, since its quads still refer to the cell.
+ */
+public class GlyphAtlas {
+
+    private static final long NO_KEY = -1;
+
+    private final int size;
+    private final int cellSize;
+    private final int cellsPerRow;
+    private final int cellCount;
+    private int textureId;
+
+    // What each cell holds and how big the glyph in it is
+    private final long[] cellKeys;
+    private final int[] cellWidths;
+    private final int[] cellHeights;
+
+    // The cells in least recently used order, head is the most recent
+    private final int[] previous;
+    private final int[] next;
+    private final long[] cellBatches;
+    private int head;
+    private int tail;
+    private long batch;
+
+    // Maps glyph keys to cells, with linear probing
+    private final long[] tableKeys;
+    private final int[] tableCells;
+    private final int tableMask;
+
+    private final int[] box = new int[4];
+    private ByteBuffer bitmap;
+
+    private int evictions;
+
+    public GlyphAtlas(int size, int cellSize) {
+
+        this.size = size;
+        this.cellSize = cellSize;
+        cellsPerRow = size / cellSize;
+        cellCount = cellsPerRow * cellsPerRow;
+
+        cellKeys = new long[cellCount];
+        cellWidths = new int[cellCount];
+        cellHeights = new int[cellCount];
+        Arrays.fill(cellKeys, NO_KEY);
+
+        // Start with every cell in the list, the first cells are handed out first
+        previous = new int[cellCount];
+        next = new int[cellCount];
+        cellBatches = new long[cellCount];
+        for (int cell = 0; cell < cellCount; cell++) {
+            previous[cell] = cell + 1;
+            next[cell] = cell - 1;
+            cellBatches[cell] = -1;
+        }
+        head = cellCount - 1;
+        tail = 0;
+
+        int tableSize = Integer.highestOneBit(cellCount * 2 - 1) << 1;
+        tableKeys = new long[tableSize];
+        tableCells = new int[tableSize];
+        tableMask = tableSize - 1;
+        Arrays.fill(tableKeys, NO_KEY);
+
+    }
+
+    /**
+     * Create the texture. Must be called with the OpenGL context current.
+     */
+    public void init() {
+
+        textureId = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, textureId);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_R8, size, size, 0, GL_RED, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        glBindTexture(GL_TEXTURE_2D, 0);
+
+        bitmap = memAlloc(cellSize * cellSize);
+
+    }
+
+    /**
+     * Find the cell of a glyph, rasterizing it into the least recently used cell if it isn't in the atlas.
+     *
+     * @return the cell, or -1 if every cell is used by the current batch
+     */
+    int acquire(Font font, int codepoint) {
+
+        long key = ((long) font.getId() << 32) | (codepoint & 0xFFFFFFFFL);
+        int slot = find(key);
+        int cell;
+        if (tableKeys[slot] == key) {
+            cell = tableCells[slot];
+        }
+        else {
+
+            cell = tail;
+            if (cellBatches[cell] == batch) {
+                return -1;
+            }
+
+            // Evict the old glyph, which moves entries around in the table
+            if (cellKeys[cell] != NO_KEY) {
+                remove(cellKeys[cell]);
+                slot = find(key);
+                evictions++;
+            }
+            tableKeys[slot] = key;
+            tableCells[slot] = cell;
+            cellKeys[cell] = key;
+            rasterize(font, codepoint, cell);
+
+        }
+
+        touch(cell);
+        return cell;
+
+    }
+
+    /**
+     * Called after a batch of quads was drawn. Glyphs used by it may be evicted from now on.
+     */
+    void nextBatch() {
+        batch++;
+    }
+
+    float getU0(int cell) {
+        return (float) (cell % cellsPerRow * cellSize) / size;
+    }
+
+    float getV0(int cell) {
+        return (float) (cell / cellsPerRow * cellSize) / size;
+    }
+
+    float getU1(int cell) {
+        return (float) (cell % cellsPerRow * cellSize + cellWidths[cell]) / size;
+    }
+
+    float getV1(int cell) {
+        return (float) (cell / cellsPerRow * cellSize + cellHeights[cell]) / size;
+    }
+
+    /**
+     * The right and bottom edge of the glyph in the cell, to clip quads of glyphs bigger than a cell.
+     */
+    int getGlyphWidth(int cell) {
+        return cellWidths[cell];
+    }
+
+    int getGlyphHeight(int cell) {
+        return cellHeights[cell];
+    }
+
+    public int getTextureId() {
+        return textureId;
+    }
+
+    /**
+     * The number of glyphs that had to make room for another one. If this keeps growing the atlas is too small.
+     *
+     * @return the eviction count
+     */
+    public int getEvictions() {
+        return evictions;
+    }
+
+    public void cleanup() {
+
+        if (textureId != 0) {
+            glDeleteTextures(textureId);
+            textureId = 0;
+        }
+        if (bitmap != null) {
+            memFree(bitmap);
+            bitmap = null;
+        }
+
+    }
+
+    private void rasterize(Font font, int codepoint, int cell) {
+
+        font.getBitmapBox(codepoint, box);
+        int width = Math.min(box[2] - box[0], cellSize);
+        int height = Math.min(box[3] - box[1], cellSize);
+        cellWidths[cell] = width;
+        cellHeights[cell] = height;
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        font.rasterize(codepoint, bitmap, width, height, width);
+        glBindTexture(GL_TEXTURE_2D, textureId);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        glTexSubImage2D(GL_TEXTURE_2D, 0, cell % cellsPerRow * cellSize, cell / cellsPerRow * cellSize, width, height, GL_RED,
+            GL_UNSIGNED_BYTE, bitmap);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 4);
+
+    }
+
+    /**
+     * Move a cell to the head of the list and mark it as used by the current batch.
+     */
+    private void touch(int cell) {
+
+        cellBatches[cell] = batch;
+        if (cell == head) {
+            return;
+        }
+
+        // Unlink the cell
+        if (cell == tail) {
+            tail = previous[cell];
+        }
+        else {
+            previous[next[cell]] = previous[cell];
+        }
+        next[previous[cell]] = next[cell];
+
+        // Link it in front of the head
+        previous[head] = cell;
+        next[cell] = head;
+        head = cell;
+
+    }
+
+    private int find(long key) {
+
+        int slot = hash(key) & tableMask;
+        while (tableKeys[slot] != NO_KEY && tableKeys[slot] != key) {
+            slot = (slot + 1) & tableMask;
+        }
+        return slot;
+
+    }
+
+    /**
+     * Remove a key and shift the entries after it back, so lookups never have to skip over deleted slots.
+     */
+    private void remove(long key) {
+
+        int slot = find(key);
+        if (tableKeys[slot] == NO_KEY) {
+            return;
+        }
+
+        int hole = slot;
+        int current = slot;
+        while (true) {
+            current = (current + 1) & tableMask;
+            if (tableKeys[current] == NO_KEY) {
+                break;
+            }
+            int home = hash(tableKeys[current]) & tableMask;
+
+            // Only move entries whose home slot is not between the hole and their current slot
+            boolean movable = hole <= current ? (home <= hole || home > current) : (home <= hole && home > current);
+            if (movable) {
+                tableKeys[hole] = tableKeys[current];
+                tableCells[hole] = tableCells[current];
+                hole = current;
+            }
+        }
+        tableKeys[hole] = NO_KEY;
+
+    }
+
+    private static int hash(long key) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+}
@@ -0,0 +1,248 @@
+package engine.graph.text;
+
+import static org.lwjgl.opengl.GL11.GL_BLEND;
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL11.GL_ONE_MINUS_SRC_ALPHA;
+import static org.lwjgl.opengl.GL11.GL_SRC_ALPHA;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.glBindTexture;
+import static org.lwjgl.opengl.GL11.glBlendFunc;
+import static org.lwjgl.opengl.GL11.glDisable;
+import static org.lwjgl.opengl.GL11.glDrawElements;
+import static org.lwjgl.opengl.GL11.glEnable;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_STATIC_DRAW;
+import static org.lwjgl.opengl.GL15.GL_STREAM_DRAW;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glBufferSubData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL30.glDeleteVertexArrays;
+import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+import static org.lwjgl.system.MemoryUtil.memAllocFloat;
+import static org.lwjgl.system.MemoryUtil.memAllocInt;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+import engine.Utils;
+import engine.graph.ShaderProgram;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Draws text in screen pixels, with the origin in the top left corner. All text drawn between begin and end is collected into
+ * one streamed vertex buffer and drawn with a single call, using glyphs from one shared atlas. Strings are laid out once and
+ * cached by their font, while drawDynamicText lays out text that changes every frame into a reused run, so neither path
+ * allocates per character.
+ */
+public class TextRenderer {
+
+    public static final int MAX_GLYPHS = 4096;
+    public static final int ATLAS_SIZE = 1024;
+
+    // Position, texture coordinates and colour
+    private static final int VERTEX_FLOATS = 8;
+    private static final int GLYPH_FLOATS = VERTEX_FLOATS * 4;
+
+    private final GlyphAtlas atlas;
+    private final TextRun dynamicRun = new TextRun();
+
+    private ShaderProgram shaderProgram;
+    private int vaoId;
+    private int vboId;
+    private int idxVboId;
+    private FloatBuffer vertices;
+    private int glyphCount;
+
+    private int screenWidth;
+    private int screenHeight;
+
+    /**
+     * Create a renderer whose atlas cells fit glyphs of fonts up to the given pixel height.
+     *
+     * @param maxPixelHeight the largest font size that will be drawn
+     */
+    public TextRenderer(int maxPixelHeight) {
+        atlas = new GlyphAtlas(ATLAS_SIZE, maxPixelHeight + 2);
+    }
+
+    public void init() throws Exception {
+
+        shaderProgram = new ShaderProgram();
+        shaderProgram.createVertexShader(Utils.loadResource("/text.vs"));
+        shaderProgram.createFragmentShader(Utils.loadResource("/text.fs"));
+        shaderProgram.link();
+        shaderProgram.createUniform("screenSize");
+        shaderProgram.createUniform("glyphAtlas");
+
+        atlas.init();
+        vertices = memAllocFloat(MAX_GLYPHS * GLYPH_FLOATS);
+
+        vaoId = glGenVertexArrays();
+        glBindVertexArray(vaoId);
+
+        // The vertex buffer is refilled every frame, so only its layout is set up here
+        vboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ARRAY_BUFFER, (long) vertices.capacity() * Float.BYTES, GL_STREAM_DRAW);
+        int stride = VERTEX_FLOATS * Float.BYTES;
+        glVertexAttribPointer(0, 2, GL_FLOAT, false, stride, 0);
+        glVertexAttribPointer(1, 2, GL_FLOAT, false, stride, 2 * Float.BYTES);
+        glVertexAttribPointer(2, 4, GL_FLOAT, false, stride, 4 * Float.BYTES);
+        glEnableVertexAttribArray(0);
+        glEnableVertexAttribArray(1);
+        glEnableVertexAttribArray(2);
+
+        // Every glyph is a quad made of two triangles, so the indices never change
+        IntBuffer indices = memAllocInt(MAX_GLYPHS * 6);
+        for (int glyph = 0; glyph < MAX_GLYPHS; glyph++) {
+            int vertex = glyph * 4;
+            indices.put(vertex).put(vertex + 1).put(vertex + 2).put(vertex + 2).put(vertex + 3).put(vertex);
+        }
+        indices.flip();
+        idxVboId = glGenBuffers();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, idxVboId);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+        memFree(indices);
+
+        glBindVertexArray(0);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+    }
+
+    /**
+     * Start collecting the text of a frame.
+     *
+     * @param screenWidth the width of the target in pixels
+     * @param screenHeight the height of the target in pixels
+     */
+    public void begin(int screenWidth, int screenHeight) {
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+        glyphCount = 0;
+        vertices.clear();
+    }
+
+    /**
+     * Draw a string that is drawn again in later frames, such as a label. Its layout is cached by the font.
+     */
+    public void drawText(Font font, String text, float x, float y, float r, float g, float b, float a) {
+        add(font, font.getRun(text), x, y, r, g, b, a);
+    }
+
+    /**
+     * Draw text that changes often, such as a counter. It is laid out every time, but into a reused run.
+     */
+    public void drawDynamicText(Font font, CharSequence text, float x, float y, float r, float g, float b, float a) {
+        dynamicRun.shape(font, text);
+        add(font, dynamicRun, x, y, r, g, b, a);
+    }
+
+    /**
+     * Draw everything collected since begin.
+     */
+    public void end() {
+        flush();
+    }
+
+    public GlyphAtlas getAtlas() {
+        return atlas;
+    }
+
+    public void cleanup() {
+
+        if (shaderProgram != null) {
+            shaderProgram.cleanup();
+        }
+        atlas.cleanup();
+        glDeleteBuffers(vboId);
+        glDeleteBuffers(idxVboId);
+        glDeleteVertexArrays(vaoId);
+        if (vertices != null) {
+            memFree(vertices);
+            vertices = null;
+        }
+
+    }
+
+    private void add(Font font, TextRun run, float x, float y, float r, float g, float b, float a) {
+
+        for (int i = 0; i < run.glyphCount; i++) {
+
+            // Draw what we have when the buffer is full, before taking the cell, as flushing unprotects the cells of the batch
+            if (glyphCount == MAX_GLYPHS) {
+                flush();
+            }
+
+            // Or when the atlas needs a cell the batch is still using
+            int cell = atlas.acquire(font, run.codepoints[i]);
+            if (cell < 0) {
+                flush();
+                cell = atlas.acquire(font, run.codepoints[i]);
+            }
+
+            // The quad is clipped to what fitted into the cell
+            int quad = i * 4;
+            float x0 = x + run.quads[quad];
+            float y0 = y + run.quads[quad + 1];
+            float x1 = x0 + atlas.getGlyphWidth(cell);
+            float y1 = y0 + atlas.getGlyphHeight(cell);
+            float u0 = atlas.getU0(cell);
+            float v0 = atlas.getV0(cell);
+            float u1 = atlas.getU1(cell);
+            float v1 = atlas.getV1(cell);
+
+            vertices.put(x0).put(y0).put(u0).put(v0).put(r).put(g).put(b).put(a);
+            vertices.put(x0).put(y1).put(u0).put(v1).put(r).put(g).put(b).put(a);
+            vertices.put(x1).put(y1).put(u1).put(v1).put(r).put(g).put(b).put(a);
+            vertices.put(x1).put(y0).put(u1).put(v0).put(r).put(g).put(b).put(a);
+            glyphCount++;
+
+        }
+
+    }
+
+    private void flush() {
+
+        if (glyphCount > 0) {
+
+            // Orphan the old contents so we don't wait for the previous draw to finish with them
+            vertices.flip();
+            glBindBuffer(GL_ARRAY_BUFFER, vboId);
+            glBufferData(GL_ARRAY_BUFFER, (long) vertices.capacity() * Float.BYTES, GL_STREAM_DRAW);
+            glBufferSubData(GL_ARRAY_BUFFER, 0, vertices);
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+            glEnable(GL_BLEND);
+            glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+            shaderProgram.bind();
+            shaderProgram.setUniform("screenSize", (float) screenWidth, (float) screenHeight);
+            shaderProgram.setUniform("glyphAtlas", 0);
+            glActiveTexture(GL_TEXTURE0);
+            glBindTexture(GL_TEXTURE_2D, atlas.getTextureId());
+
+            glBindVertexArray(vaoId);
+            glDrawElements(GL_TRIANGLES, glyphCount * 6, GL_UNSIGNED_INT, 0);
+            glBindVertexArray(0);
+
+            glBindTexture(GL_TEXTURE_2D, 0);
+            shaderProgram.unbind();
+            glDisable(GL_BLEND);
+
+        }
+
+        glyphCount = 0;
+        vertices.clear();
+        atlas.nextBatch();
+
+    }
+
+}
@@ -0,0 +1,69 @@
+package engine.graph.text;
+
+/**
+ * A string laid out with a font: which glyph goes where, relative to the top left corner of the text. It doesn't refer to the
+ * atlas, so it stays valid when glyphs are evicted and rasterized again.
+ */
+class TextRun {
+
+    private static final int[] NO_INTS = new int[0];
+    private static final float[] NO_FLOATS = new float[0];
+
+    private final int[] box = new int[4];
+
+    int glyphCount;
+    int[] codepoints = NO_INTS;
+    float[] quads = NO_FLOATS;
+    float width;
+    float height;
+
+    /**
+     * Lay out the text, reusing the arrays of the previous layout when they are big enough. Glyphs without pixels, such as
+     * spaces, only move the pen.
+     */
+    void shape(Font font, CharSequence text) {
+
+        if (codepoints.length < text.length()) {
+            codepoints = new int[text.length()];
+            quads = new float[text.length() * 4];
+        }
+
+        glyphCount = 0;
+        width = 0;
+        float penX = 0;
+        float baseline = font.getAscent();
+        int i = 0;
+        while (i < text.length()) {
+
+            int codepoint = Character.codePointAt(text, i);
+            i += Character.charCount(codepoint);
+
+            if (codepoint == '\n') {
+                penX = 0;
+                baseline += font.getLineHeight();
+                continue;
+            }
+
+            font.getBitmapBox(codepoint, box);
+            if (box[2] > box[0] && box[3] > box[1]) {
+                int quad = glyphCount * 4;
+                codepoints[glyphCount] = codepoint;
+                quads[quad] = penX + box[0];
+                quads[quad + 1] = baseline + box[1];
+                quads[quad + 2] = penX + box[2];
+                quads[quad + 3] = baseline + box[3];
+                glyphCount++;
+            }
+
+            penX += font.getAdvance(codepoint);
+            if (i < text.length()) {
+                penX += font.getKerning(codepoint, Character.codePointAt(text, i));
+            }
+            width = Math.max(width, penX);
+
+        }
+        height = baseline - font.getAscent() + font.getLineHeight();
+
+    }
+
+}
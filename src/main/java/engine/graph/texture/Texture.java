@@ -0,0 +1,105 @@
+package engine.graph.texture;
+
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11.glBindTexture;
+import static org.lwjgl.opengl.GL11.glDeleteTextures;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+
+/**
+ * A texture loaded by the TextureManager. It is handed out straight away and becomes usable once the image has been decoded and
+ * uploaded, which can take a few frames. Until then it has no OpenGL id and binding it unbinds the texture unit.
+ */
+public class Texture {
+
+    private final String name;
+
+    private int id;
+    private int width;
+    private int height;
+    private boolean loaded;
+    private boolean failed;
+
+    // Textures with the same content share the OpenGL texture of the first one
+    private Texture sharedWith;
+
+    Texture(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Bind the texture to a texture unit.
+     *
+     * @param unit the texture unit, starting at 0
+     */
+    public void bind(int unit) {
+        glActiveTexture(GL_TEXTURE0 + unit);
+        glBindTexture(GL_TEXTURE_2D, id);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
+    void setLoaded() {
+        loaded = true;
+    }
+
+    void setFailed() {
+        failed = true;
+    }
+
+    /**
+     * Use the OpenGL texture of another texture with identical content.
+     */
+    void shareWith(Texture texture) {
+        sharedWith = texture;
+        id = texture.id;
+        width = texture.width;
+        height = texture.height;
+        loaded = true;
+    }
+
+    /**
+     * Delete the OpenGL texture, unless it belongs to another texture.
+     */
+    public void cleanup() {
+
+        if (id != 0 && sharedWith == null) {
+            glDeleteTextures(id);
+        }
+        id = 0;
+        loaded = false;
+
+    }
+
+}
@@ -0,0 +1,41 @@
+package engine.graph.texture;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Many small images packed into one texture, so they can be drawn without switching textures. The regions are filled in by the
+ * worker that packs the atlas and may only be read once the texture is loaded.
+ */
+public class TextureAtlas {
+
+    private final Texture texture;
+    private final Map<String, TextureRegion> regions = new HashMap<>();
+
+    TextureAtlas(Texture texture) {
+        this.texture = texture;
+    }
+
+    public Texture getTexture() {
+        return texture;
+    }
+
+    public boolean isLoaded() {
+        return texture.isLoaded();
+    }
+
+    /**
+     * Get the region of a packed image.
+     *
+     * @param name the resource name the image was loaded from
+     * @return the region, or null if the atlas doesn't contain the image or isn't loaded yet
+     */
+    public TextureRegion getRegion(String name) {
+        return texture.isLoaded() ? regions.get(name) : null;
+    }
+
+    void addRegion(String name, TextureRegion region) {
+        regions.put(name, region);
+    }
+
+}
@@ -0,0 +1,604 @@
+package engine.graph.texture;
+
+import static org.lwjgl.opengl.GL11.GL_LINEAR;
+import static org.lwjgl.opengl.GL11.GL_LINEAR_MIPMAP_LINEAR;
+import static org.lwjgl.opengl.GL11.GL_RGBA;
+import static org.lwjgl.opengl.GL11.GL_RGBA8;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_MAG_FILTER;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_MIN_FILTER;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL11.glBindTexture;
+import static org.lwjgl.opengl.GL11.glGenTextures;
+import static org.lwjgl.opengl.GL11.glTexImage2D;
+import static org.lwjgl.opengl.GL11.glTexParameteri;
+import static org.lwjgl.opengl.GL11.glTexSubImage2D;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL;
+import static org.lwjgl.opengl.GL15.GL_STREAM_DRAW;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL15.glUnmapBuffer;
+import static org.lwjgl.opengl.GL21.GL_PIXEL_UNPACK_BUFFER;
+import static org.lwjgl.opengl.GL30.GL_MAP_INVALIDATE_BUFFER_BIT;
+import static org.lwjgl.opengl.GL30.GL_MAP_WRITE_BIT;
+import static org.lwjgl.opengl.GL30.glGenerateMipmap;
+import static org.lwjgl.opengl.GL30.glMapBufferRange;
+import static org.lwjgl.stb.STBImage.stbi_failure_reason;
+import static org.lwjgl.stb.STBImage.stbi_image_free;
+import static org.lwjgl.stb.STBImage.stbi_load_from_memory;
+import static org.lwjgl.stb.STBImageResize.stbir_resize_uint8;
+import static org.lwjgl.stb.STBRectPack.stbrp_init_target;
+import static org.lwjgl.stb.STBRectPack.stbrp_pack_rects;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memCalloc;
+import static org.lwjgl.system.MemoryUtil.memCopy;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+import engine.Utils;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.lwjgl.stb.STBRPContext;
+import org.lwjgl.stb.STBRPNode;
+import org.lwjgl.stb.STBRPRect;
+
+/**
+ * Loads textures without blocking the game loop. Images are decoded by stb_image on a pool of worker threads straight into
+ * off-heap memory, and mipmaps are either built there too or generated by the GPU afterwards. The decoded images are uploaded
+ * by update, which has to be called once per frame on the GL thread. It streams rows through an orphaned pixel buffer object
+ * and never copies more than the upload budget per frame, so a large texture is spread over several frames instead of causing
+ * a hitch.
+ *
+ * Textures are cached by resource name and mip mode, and files with identical content loaded with the same mip mode are
+ * detected by hash and share a single OpenGL texture. Loading the same image with another mip mode gives a separate texture.
+ */
+public class TextureManager {
+
+    public static final int DEFAULT_UPLOAD_BUDGET = 4 * 1024 * 1024;
+
+    // The budget has to fit at least one row of the largest texture we expect
+    private static final int MIN_UPLOAD_BUDGET = 16384 * 4;
+    private static final int MAX_STRIPS = 64;
+    private static final int ATLAS_PADDING = 1;
+
+    /**
+     * How the mipmaps of a texture are created.
+     */
+    public enum MipMode {
+        NONE, CPU, GPU
+    }
+
+    private final ExecutorService workers;
+    private final int uploadBudget;
+
+    // Only touched on the GL thread, textures are keyed by mip mode and resource name
+    private final Map<String, Texture> texturesByName = new HashMap<>();
+    private final Map<String, TextureAtlas> atlasesByName = new HashMap<>();
+    private final List<Texture> textures = new ArrayList<>();
+    private final Deque<Upload> pending = new ArrayDeque<>();
+    private int pboId;
+
+    // Shared with the workers, keyed by mip mode and content hash
+    private final Map<String, Texture> texturesByContent = new ConcurrentHashMap<>();
+    private final Queue<Upload> decoded = new ConcurrentLinkedQueue<>();
+
+    // The row strips copied into the pixel buffer this frame
+    private final Upload[] stripUploads = new Upload[MAX_STRIPS];
+    private final int[] stripLevels = new int[MAX_STRIPS];
+    private final int[] stripRows = new int[MAX_STRIPS];
+    private final int[] stripRowCounts = new int[MAX_STRIPS];
+    private final int[] stripOffsets = new int[MAX_STRIPS];
+
+    public TextureManager() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), DEFAULT_UPLOAD_BUDGET);
+    }
+
+    public TextureManager(int workerCount, int uploadBudget) {
+
+        this.uploadBudget = Math.max(uploadBudget, MIN_UPLOAD_BUDGET);
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "TEXTURE_WORKER_THREAD-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    }
+
+    /**
+     * Create the pixel buffer used for uploads. Must be called with the OpenGL context current.
+     */
+    public void init() {
+        pboId = glGenBuffers();
+    }
+
+    /**
+     * Start loading a texture, or return the one already loaded from the same resource with the same mip mode.
+     *
+     * @param resource the image resource
+     * @param mipMode how to create mipmaps
+     * @return the texture, loaded once isLoaded returns true
+     */
+    public Texture load(String resource, MipMode mipMode) {
+
+        String key = mipMode + ":" + resource;
+        Texture texture = texturesByName.get(key);
+        if (texture != null) {
+            return texture;
+        }
+
+        Texture newTexture = new Texture(resource);
+        texturesByName.put(key, newTexture);
+        textures.add(newTexture);
+        workers.execute(() -> decode(newTexture, mipMode));
+        return newTexture;
+
+    }
+
+    /**
+     * Start packing several small images into one atlas, or return the atlas already loaded under the same name.
+     *
+     * @param name the atlas name
+     * @param size the width and height of the atlas
+     * @param mipMode how to create mipmaps
+     * @param resources the image resources to pack
+     * @return the atlas, loaded once isLoaded returns true
+     */
+    public TextureAtlas loadAtlas(String name, int size, MipMode mipMode, String... resources) {
+
+        TextureAtlas atlas = atlasesByName.get(name);
+        if (atlas != null) {
+            return atlas;
+        }
+
+        Texture texture = new Texture(name);
+        TextureAtlas newAtlas = new TextureAtlas(texture);
+        atlasesByName.put(name, newAtlas);
+        textures.add(texture);
+        workers.execute(() -> pack(newAtlas, size, mipMode, resources.clone()));
+        return newAtlas;
+
+    }
+
+    /**
+     * Upload as much of the decoded images as the budget allows. Textures are completed in the order they were decoded.
+     */
+    public void update() {
+
+        Upload upload;
+        while ((upload = decoded.poll()) != null) {
+            pending.add(upload);
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        // Copy row strips into the pixel buffer until the budget is used up
+        ByteBuffer staging = null;
+        int strips = 0;
+        int used = 0;
+        Iterator<Upload> iterator = pending.iterator();
+        while (iterator.hasNext() && strips < MAX_STRIPS) {
+
+            upload = iterator.next();
+            if (upload.failed) {
+                upload.texture.setFailed();
+                iterator.remove();
+                continue;
+            }
+
+            // Duplicates wait for the texture they share with
+            if (upload.original != null) {
+                if (upload.original.isLoaded()) {
+                    upload.texture.shareWith(upload.original);
+                    iterator.remove();
+                }
+                else if (upload.original.isFailed()) {
+                    upload.texture.setFailed();
+                    iterator.remove();
+                }
+                continue;
+            }
+
+            // Reserve the storage before the unpack buffer is bound, or the null data would be read from the buffer
+            if (upload.texture.getId() == 0) {
+                if (staging != null) {
+                    glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+                }
+                allocate(upload);
+                if (staging != null) {
+                    glBindBuffer(GL_PIXEL_UNPACK_BUFFER, pboId);
+                }
+            }
+
+            while (!upload.isDone() && strips < MAX_STRIPS) {
+
+                int rowBytes = upload.widths[upload.level] * 4;
+                int rows = Math.min(upload.heights[upload.level] - upload.row, (uploadBudget - used) / rowBytes);
+                if (rows == 0) {
+                    break;
+                }
+
+                // Orphan the buffer on first use, so we never wait for last frame's uploads to finish reading it
+                if (staging == null) {
+                    glBindBuffer(GL_PIXEL_UNPACK_BUFFER, pboId);
+                    glBufferData(GL_PIXEL_UNPACK_BUFFER, uploadBudget, GL_STREAM_DRAW);
+                    staging = glMapBufferRange(GL_PIXEL_UNPACK_BUFFER, 0, uploadBudget,
+                        GL_MAP_WRITE_BIT | GL_MAP_INVALIDATE_BUFFER_BIT);
+                    if (staging == null) {
+                        System.err.println("Could not map the texture upload buffer");
+                        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+                        return;
+                    }
+                }
+
+                int bytes = rows * rowBytes;
+                memCopy(memAddress(upload.levels[upload.level]) + (long) upload.row * rowBytes, memAddress(staging) + used, bytes);
+                stripUploads[strips] = upload;
+                stripLevels[strips] = upload.level;
+                stripRows[strips] = upload.row;
+                stripRowCounts[strips] = rows;
+                stripOffsets[strips] = used;
+                strips++;
+                used += bytes;
+                upload.advance(rows);
+
+            }
+
+            if (!upload.isDone()) {
+                break;
+            }
+
+        }
+
+        if (staging == null) {
+            return;
+        }
+        glUnmapBuffer(GL_PIXEL_UNPACK_BUFFER);
+
+        // With the unpack buffer bound the last argument is an offset into it
+        for (int i = 0; i < strips; i++) {
+            Upload strip = stripUploads[i];
+            stripUploads[i] = null;
+            glBindTexture(GL_TEXTURE_2D, strip.texture.getId());
+            glTexSubImage2D(GL_TEXTURE_2D, stripLevels[i], 0, stripRows[i], strip.widths[stripLevels[i]], stripRowCounts[i],
+                GL_RGBA, GL_UNSIGNED_BYTE, stripOffsets[i]);
+        }
+        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+
+        // Finish the textures that are now completely uploaded
+        iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            upload = iterator.next();
+            if (upload.levels != null && upload.isDone()) {
+                glBindTexture(GL_TEXTURE_2D, upload.texture.getId());
+                if (upload.mipMode == MipMode.GPU) {
+                    glGenerateMipmap(GL_TEXTURE_2D);
+                }
+                upload.texture.setLoaded();
+                upload.free();
+                iterator.remove();
+            }
+        }
+        glBindTexture(GL_TEXTURE_2D, 0);
+
+    }
+
+    /**
+     * The number of textures that are still being decoded or uploaded.
+     *
+     * @return the number of textures not yet loaded
+     */
+    public int getPendingCount() {
+
+        int count = 0;
+        for (Texture texture : textures) {
+            if (!texture.isLoaded() && !texture.isFailed()) {
+                count++;
+            }
+        }
+        return count;
+
+    }
+
+    /**
+     * Stop the workers and delete every texture and the upload buffer.
+     */
+    public void cleanup() {
+
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+
+        Upload upload;
+        while ((upload = decoded.poll()) != null) {
+            pending.add(upload);
+        }
+        for (Upload remaining : pending) {
+            remaining.free();
+        }
+        pending.clear();
+
+        for (Texture texture : textures) {
+            texture.cleanup();
+        }
+        textures.clear();
+        texturesByName.clear();
+        atlasesByName.clear();
+        if (pboId != 0) {
+            glDeleteBuffers(pboId);
+            pboId = 0;
+        }
+
+    }
+
+    /**
+     * Read, hash and decode an image. Runs on a worker thread.
+     */
+    private void decode(Texture texture, MipMode mipMode) {
+
+        ByteBuffer file = null;
+        try {
+
+            file = Utils.loadResourceBytes(texture.getName());
+
+            // Another resource with the same bytes is only decoded once, unless it needs different mip levels
+            Texture original = texturesByContent.putIfAbsent(mipMode + ":" + hash(file), texture);
+            if (original != null) {
+                decoded.add(new Upload(texture, original));
+                return;
+            }
+
+            int[] width = new int[1];
+            int[] height = new int[1];
+            int[] components = new int[1];
+            ByteBuffer pixels = stbi_load_from_memory(file, width, height, components, 4);
+            if (pixels == null) {
+                throw new Exception("Could not decode image " + texture.getName() + ": " + stbi_failure_reason());
+            }
+            decoded.add(new Upload(texture, pixels, true, width[0], height[0], mipMode));
+
+        }
+        catch (Exception excp) {
+            excp.printStackTrace();
+            decoded.add(new Upload(texture));
+        }
+        finally {
+            if (file != null) {
+                memFree(file);
+            }
+        }
+
+    }
+
+    /**
+     * Decode the images of an atlas, pack them with stb_rect_pack and copy them into one image. Runs on a worker thread.
+     */
+    private void pack(TextureAtlas atlas, int size, MipMode mipMode, String[] resources) {
+
+        ByteBuffer[] images = new ByteBuffer[resources.length];
+        STBRPContext context = STBRPContext.malloc();
+        STBRPNode.Buffer nodes = STBRPNode.malloc(size);
+        STBRPRect.Buffer rects = STBRPRect.calloc(resources.length);
+        try {
+
+            int[] width = new int[1];
+            int[] height = new int[1];
+            int[] components = new int[1];
+            for (int i = 0; i < resources.length; i++) {
+                ByteBuffer file = Utils.loadResourceBytes(resources[i]);
+                try {
+                    images[i] = stbi_load_from_memory(file, width, height, components, 4);
+                }
+                finally {
+                    memFree(file);
+                }
+                if (images[i] == null) {
+                    throw new Exception("Could not decode image " + resources[i] + ": " + stbi_failure_reason());
+                }
+                rects.get(i).id(i).w((short) (width[0] + ATLAS_PADDING)).h((short) (height[0] + ATLAS_PADDING));
+            }
+
+            stbrp_init_target(context, size, size, nodes);
+            if (stbrp_pack_rects(context, rects) == 0) {
+                throw new Exception("Images do not fit into a " + size + "x" + size + " atlas: " + atlas.getTexture().getName());
+            }
+
+            // Copy each image into its packed position, row by row
+            ByteBuffer pixels = memCalloc(size * size * 4);
+            for (int i = 0; i < resources.length; i++) {
+                STBRPRect rect = rects.get(i);
+                int imageWidth = rect.w() - ATLAS_PADDING;
+                int imageHeight = rect.h() - ATLAS_PADDING;
+                for (int row = 0; row < imageHeight; row++) {
+                    memCopy(memAddress(images[i]) + (long) row * imageWidth * 4,
+                        memAddress(pixels) + ((long) (rect.y() + row) * size + rect.x()) * 4, imageWidth * 4);
+                }
+                atlas.addRegion(resources[i], new TextureRegion((float) rect.x() / size, (float) rect.y() / size,
+                    (float) (rect.x() + imageWidth) / size, (float) (rect.y() + imageHeight) / size, imageWidth, imageHeight));
+            }
+            decoded.add(new Upload(atlas.getTexture(), pixels, false, size, size, mipMode));
+
+        }
+        catch (Exception excp) {
+            excp.printStackTrace();
+            decoded.add(new Upload(atlas.getTexture()));
+        }
+        finally {
+            for (ByteBuffer image : images) {
+                if (image != null) {
+                    stbi_image_free(image);
+                }
+            }
+            rects.free();
+            nodes.free();
+            context.free();
+        }
+
+    }
+
+    /**
+     * Create the texture and allocate the storage of every mip level, the rows are filled in by the strips that follow.
+     */
+    private static void allocate(Upload upload) {
+
+        int textureId = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, textureId);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, upload.mipLevels > 1 ? GL_LINEAR_MIPMAP_LINEAR : GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, upload.mipLevels - 1);
+        for (int level = 0; level < upload.levels.length; level++) {
+            glTexImage2D(GL_TEXTURE_2D, level, GL_RGBA8, upload.widths[level], upload.heights[level], 0, GL_RGBA,
+                GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        }
+        upload.texture.setId(textureId);
+        upload.texture.setSize(upload.widths[0], upload.heights[0]);
+
+    }
+
+    private static String hash(ByteBuffer file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        digest.update(file.duplicate());
+        return new BigInteger(1, digest.digest()).toString(16);
+    }
+
+    private static int mipLevelCount(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    /**
+     * A decoded image waiting to be uploaded, together with how far the upload has got.
+     */
+    private static class Upload {
+
+        private final Texture texture;
+        private final Texture original;
+        private final boolean failed;
+        private final MipMode mipMode;
+        private final int mipLevels;
+
+        // The levels uploaded from the CPU, just the base level unless the mipmaps were built on the CPU
+        private final ByteBuffer[] levels;
+        private final int[] widths;
+        private final int[] heights;
+        private final boolean stbOwned;
+
+        // The next row to upload
+        private int level;
+        private int row;
+
+        Upload(Texture texture, ByteBuffer pixels, boolean stbOwned, int width, int height, MipMode mipMode) {
+
+            this.texture = texture;
+            this.original = null;
+            this.failed = false;
+            this.mipMode = mipMode;
+            this.stbOwned = stbOwned;
+            this.mipLevels = mipMode == MipMode.NONE ? 1 : mipLevelCount(width, height);
+
+            int cpuLevels = mipMode == MipMode.CPU ? mipLevels : 1;
+            levels = new ByteBuffer[cpuLevels];
+            widths = new int[cpuLevels];
+            heights = new int[cpuLevels];
+            levels[0] = pixels;
+            widths[0] = width;
+            heights[0] = height;
+
+            // Each level is a filtered downscale of the one before
+            for (int i = 1; i < cpuLevels; i++) {
+                widths[i] = Math.max(1, widths[i - 1] / 2);
+                heights[i] = Math.max(1, heights[i - 1] / 2);
+                levels[i] = memAlloc(widths[i] * heights[i] * 4);
+                stbir_resize_uint8(levels[i - 1], widths[i - 1], heights[i - 1], 0, levels[i], widths[i], heights[i], 0, 4);
+            }
+
+        }
+
+        /**
+         * A texture whose content is identical to one already being loaded.
+         */
+        Upload(Texture texture, Texture original) {
+            this.texture = texture;
+            this.original = original;
+            this.failed = false;
+            this.mipMode = MipMode.NONE;
+            this.mipLevels = 0;
+            this.levels = null;
+            this.widths = null;
+            this.heights = null;
+            this.stbOwned = false;
+        }
+
+        /**
+         * A texture that could not be loaded.
+         */
+        Upload(Texture texture) {
+            this.texture = texture;
+            this.original = null;
+            this.failed = true;
+            this.mipMode = MipMode.NONE;
+            this.mipLevels = 0;
+            this.levels = null;
+            this.widths = null;
+            this.heights = null;
+            this.stbOwned = false;
+        }
+
+        boolean isDone() {
+            return levels != null && level == levels.length;
+        }
+
+        void advance(int rows) {
+
+            row += rows;
+            if (row == heights[level]) {
+                level++;
+                row = 0;
+            }
+
+        }
+
+        void free() {
+
+            if (levels == null) {
+                return;
+            }
+            for (int i = 0; i < levels.length; i++) {
+                if (levels[i] == null) {
+                    continue;
+                }
+                if (i == 0 && stbOwned) {
+                    stbi_image_free(levels[i]);
+                }
+                else {
+                    memFree(levels[i]);
+                }
+                levels[i] = null;
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,48 @@
+package engine.graph.texture;
+
+/**
+ * The area of an atlas that holds one of the packed images, in texture coordinates.
+ */
+public class TextureRegion {
+
+    private final float u0;
+    private final float v0;
+    private final float u1;
+    private final float v1;
+    private final int width;
+    private final int height;
+
+    public TextureRegion(float u0, float v0, float u1, float v1, int width, int height) {
+        this.u0 = u0;
+        this.v0 = v0;
+        this.u1 = u1;
+        this.v1 = v1;
+        this.width = width;
+        this.height = height;
+    }
+
+    public float getU0() {
+        return u0;
+    }
+
+    public float getV0() {
+        return v0;
+    }
+
+    public float getU1() {
+        return u1;
+    }
+
+    public float getV1() {
+        return v1;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+}
@@ -0,0 +1,269 @@
+package engine.math;
+
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memPutFloat;
+
+import java.nio.FloatBuffer;
+
+/**
+ * A mutable 4x4 matrix in the column major layout OpenGL expects. Field mCR is column C, row R, so m30, m31 and m32 hold the
+ * translation. Operations change this matrix and return it, so nothing is allocated.
+ */
+public class Matrix4f {
+
+    public float m00 = 1.0f, m01, m02, m03;
+    public float m10, m11 = 1.0f, m12, m13;
+    public float m20, m21, m22 = 1.0f, m23;
+    public float m30, m31, m32, m33 = 1.0f;
+
+    public Matrix4f identity() {
+        return set(
+            1.0f, 0.0f, 0.0f, 0.0f,
+            0.0f, 1.0f, 0.0f, 0.0f,
+            0.0f, 0.0f, 1.0f, 0.0f,
+            0.0f, 0.0f, 0.0f, 1.0f
+        );
+    }
+
+    public Matrix4f set(Matrix4f m) {
+        return set(
+            m.m00, m.m01, m.m02, m.m03,
+            m.m10, m.m11, m.m12, m.m13,
+            m.m20, m.m21, m.m22, m.m23,
+            m.m30, m.m31, m.m32, m.m33
+        );
+    }
+
+    /**
+     * Set every element, one column after the other.
+     */
+    public Matrix4f set(float m00, float m01, float m02, float m03, float m10, float m11, float m12, float m13, float m20,
+        float m21, float m22, float m23, float m30, float m31, float m32, float m33) {
+
+        this.m00 = m00;
+        this.m01 = m01;
+        this.m02 = m02;
+        this.m03 = m03;
+        this.m10 = m10;
+        this.m11 = m11;
+        this.m12 = m12;
+        this.m13 = m13;
+        this.m20 = m20;
+        this.m21 = m21;
+        this.m22 = m22;
+        this.m23 = m23;
+        this.m30 = m30;
+        this.m31 = m31;
+        this.m32 = m32;
+        this.m33 = m33;
+        return this;
+
+    }
+
+    /**
+     * Set this matrix to this * right, so right is applied to vectors first.
+     */
+    public Matrix4f mul(Matrix4f right) {
+        return mul(right, this);
+    }
+
+    /**
+     * Store this * right in dest. Any of the three may be the same matrix.
+     *
+     * @return dest
+     */
+    public Matrix4f mul(Matrix4f right, Matrix4f dest) {
+
+        float n00 = m00 * right.m00 + m10 * right.m01 + m20 * right.m02 + m30 * right.m03;
+        float n01 = m01 * right.m00 + m11 * right.m01 + m21 * right.m02 + m31 * right.m03;
+        float n02 = m02 * right.m00 + m12 * right.m01 + m22 * right.m02 + m32 * right.m03;
+        float n03 = m03 * right.m00 + m13 * right.m01 + m23 * right.m02 + m33 * right.m03;
+        float n10 = m00 * right.m10 + m10 * right.m11 + m20 * right.m12 + m30 * right.m13;
+        float n11 = m01 * right.m10 + m11 * right.m11 + m21 * right.m12 + m31 * right.m13;
+        float n12 = m02 * right.m10 + m12 * right.m11 + m22 * right.m12 + m32 * right.m13;
+        float n13 = m03 * right.m10 + m13 * right.m11 + m23 * right.m12 + m33 * right.m13;
+        float n20 = m00 * right.m20 + m10 * right.m21 + m20 * right.m22 + m30 * right.m23;
+        float n21 = m01 * right.m20 + m11 * right.m21 + m21 * right.m22 + m31 * right.m23;
+        float n22 = m02 * right.m20 + m12 * right.m21 + m22 * right.m22 + m32 * right.m23;
+        float n23 = m03 * right.m20 + m13 * right.m21 + m23 * right.m22 + m33 * right.m23;
+        float n30 = m00 * right.m30 + m10 * right.m31 + m20 * right.m32 + m30 * right.m33;
+        float n31 = m01 * right.m30 + m11 * right.m31 + m21 * right.m32 + m31 * right.m33;
+        float n32 = m02 * right.m30 + m12 * right.m31 + m22 * right.m32 + m32 * right.m33;
+        float n33 = m03 * right.m30 + m13 * right.m31 + m23 * right.m32 + m33 * right.m33;
+
+        return dest.set(n00, n01, n02, n03, n10, n11, n12, n13, n20, n21, n22, n23, n30, n31, n32, n33);
+
+    }
+
+    /**
+     * Set this matrix to scale, then rotate, then translate, the usual world matrix of an object. TransformBatch does the same
+     * for many objects at once.
+     */
+    public Matrix4f translationRotateScale(float tx, float ty, float tz, float qx, float qy, float qz, float qw, float sx,
+        float sy, float sz) {
+
+        float xx = qx * qx;
+        float yy = qy * qy;
+        float zz = qz * qz;
+        float xy = qx * qy;
+        float xz = qx * qz;
+        float yz = qy * qz;
+        float xw = qx * qw;
+        float yw = qy * qw;
+        float zw = qz * qw;
+
+        return set(
+            (1.0f - 2.0f * (yy + zz)) * sx, 2.0f * (xy + zw) * sx, 2.0f * (xz - yw) * sx, 0.0f,
+            2.0f * (xy - zw) * sy, (1.0f - 2.0f * (xx + zz)) * sy, 2.0f * (yz + xw) * sy, 0.0f,
+            2.0f * (xz + yw) * sz, 2.0f * (yz - xw) * sz, (1.0f - 2.0f * (xx + yy)) * sz, 0.0f,
+            tx, ty, tz, 1.0f
+        );
+
+    }
+
+    public Matrix4f translationRotateScale(Vector3f translation, Quaternionf rotation, Vector3f scale) {
+        return translationRotateScale(translation.x, translation.y, translation.z, rotation.x, rotation.y, rotation.z,
+            rotation.w, scale.x, scale.y, scale.z);
+    }
+
+    /**
+     * Set this matrix to a perspective projection, mapping depth to the -1 to 1 range of OpenGL.
+     *
+     * @param fovY the vertical field of view in radians
+     * @param aspect the width divided by the height
+     * @param zNear the distance to the near plane
+     * @param zFar the distance to the far plane
+     * @return this matrix
+     */
+    public Matrix4f perspective(float fovY, float aspect, float zNear, float zFar) {
+
+        float h = 1.0f / (float) Math.tan(fovY * 0.5f);
+        float depth = 1.0f / (zNear - zFar);
+        return set(
+            h / aspect, 0.0f, 0.0f, 0.0f,
+            0.0f, h, 0.0f, 0.0f,
+            0.0f, 0.0f, (zFar + zNear) * depth, -1.0f,
+            0.0f, 0.0f, 2.0f * zFar * zNear * depth, 0.0f
+        );
+
+    }
+
+    /**
+     * Set this matrix to an orthographic projection of the given box onto the -1 to 1 cube.
+     */
+    public Matrix4f orthographic(float left, float right, float bottom, float top, float zNear, float zFar) {
+        return set(
+            2.0f / (right - left), 0.0f, 0.0f, 0.0f,
+            0.0f, 2.0f / (top - bottom), 0.0f, 0.0f,
+            0.0f, 0.0f, 2.0f / (zNear - zFar), 0.0f,
+            (right + left) / (left - right), (top + bottom) / (bottom - top), (zFar + zNear) / (zNear - zFar), 1.0f
+        );
+    }
+
+    /**
+     * Set this matrix to a view matrix of a camera at eye looking at center.
+     */
+    public Matrix4f lookAt(Vector3f eye, Vector3f center, Vector3f up) {
+
+        // The forward direction
+        float fx = center.x - eye.x;
+        float fy = center.y - eye.y;
+        float fz = center.z - eye.z;
+        float inverseLength = 1.0f / (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+        fx *= inverseLength;
+        fy *= inverseLength;
+        fz *= inverseLength;
+
+        // The side direction, forward x up
+        float sx = fy * up.z - fz * up.y;
+        float sy = fz * up.x - fx * up.z;
+        float sz = fx * up.y - fy * up.x;
+        inverseLength = 1.0f / (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+        sx *= inverseLength;
+        sy *= inverseLength;
+        sz *= inverseLength;
+
+        // The true up direction, side x forward
+        float ux = sy * fz - sz * fy;
+        float uy = sz * fx - sx * fz;
+        float uz = sx * fy - sy * fx;
+
+        return set(
+            sx, ux, -fx, 0.0f,
+            sy, uy, -fy, 0.0f,
+            sz, uz, -fz, 0.0f,
+            -(sx * eye.x + sy * eye.y + sz * eye.z), -(ux * eye.x + uy * eye.y + uz * eye.z),
+            fx * eye.x + fy * eye.y + fz * eye.z, 1.0f
+        );
+
+    }
+
+    /**
+     * Transform a point by this matrix, in place. The w component is taken to be 1 and the result isn't divided by w.
+     *
+     * @param v the point
+     * @return the point
+     */
+    public Vector3f transformPosition(Vector3f v) {
+        return v.set(
+            m00 * v.x + m10 * v.y + m20 * v.z + m30,
+            m01 * v.x + m11 * v.y + m21 * v.z + m31,
+            m02 * v.x + m12 * v.y + m22 * v.z + m32
+        );
+    }
+
+    /**
+     * Write the 16 elements in column major order at the position of the buffer, without moving its position.
+     *
+     * @param buffer the buffer, usually off-heap so it can be handed to OpenGL
+     * @return the buffer
+     */
+    public FloatBuffer get(FloatBuffer buffer) {
+
+        if (buffer.remaining() < 16) {
+            throw new IllegalArgumentException("A matrix needs 16 floats but only " + buffer.remaining() + " remain");
+        }
+        if (buffer.isDirect()) {
+            put(memAddress(buffer));
+        }
+        else {
+            int index = buffer.position();
+            buffer.put(index, m00).put(index + 1, m01).put(index + 2, m02).put(index + 3, m03);
+            buffer.put(index + 4, m10).put(index + 5, m11).put(index + 6, m12).put(index + 7, m13);
+            buffer.put(index + 8, m20).put(index + 9, m21).put(index + 10, m22).put(index + 11, m23);
+            buffer.put(index + 12, m30).put(index + 13, m31).put(index + 14, m32).put(index + 15, m33);
+        }
+        return buffer;
+
+    }
+
+    private void put(long address) {
+
+        memPutFloat(address, m00);
+        memPutFloat(address + 4, m01);
+        memPutFloat(address + 8, m02);
+        memPutFloat(address + 12, m03);
+        memPutFloat(address + 16, m10);
+        memPutFloat(address + 20, m11);
+        memPutFloat(address + 24, m12);
+        memPutFloat(address + 28, m13);
+        memPutFloat(address + 32, m20);
+        memPutFloat(address + 36, m21);
+        memPutFloat(address + 40, m22);
+        memPutFloat(address + 44, m23);
+        memPutFloat(address + 48, m30);
+        memPutFloat(address + 52, m31);
+        memPutFloat(address + 56, m32);
+        memPutFloat(address + 60, m33);
+
+    }
+
+    @Override
+    public String toString() {
+        return "[" + m00 + " " + m10 + " " + m20 + " " + m30 + "]\n"
+            + "[" + m01 + " " + m11 + " " + m21 + " " + m31 + "]\n"
+            + "[" + m02 + " " + m12 + " " + m22 + " " + m32 + "]\n"
+            + "[" + m03 + " " + m13 + " " + m23 + " " + m33 + "]";
+    }
+
+}
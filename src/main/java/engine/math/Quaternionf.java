@@ -0,0 +1,127 @@
+package engine.math;
+
+/**
+ * A mutable rotation quaternion. Like the vectors, every operation changes this quaternion and returns it, so nothing is
+ * allocated.
+ */
+public class Quaternionf {
+
+    public float x;
+    public float y;
+    public float z;
+    public float w = 1.0f;
+
+    public Quaternionf identity() {
+        return set(0.0f, 0.0f, 0.0f, 1.0f);
+    }
+
+    public Quaternionf set(float x, float y, float z, float w) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
+        return this;
+    }
+
+    public Quaternionf set(Quaternionf q) {
+        return set(q.x, q.y, q.z, q.w);
+    }
+
+    /**
+     * Set this quaternion to a rotation around an axis.
+     *
+     * @param angle the angle in radians
+     * @param axisX the x component of the axis, which must be of unit length
+     * @param axisY the y component of the axis
+     * @param axisZ the z component of the axis
+     * @return this quaternion
+     */
+    public Quaternionf rotationAxis(float angle, float axisX, float axisY, float axisZ) {
+
+        float halfAngle = angle * 0.5f;
+        float sin = (float) Math.sin(halfAngle);
+        return set(axisX * sin, axisY * sin, axisZ * sin, (float) Math.cos(halfAngle));
+
+    }
+
+    /**
+     * Set this quaternion to a rotation around x, then around the rotated y axis, then around the twice rotated z axis, all
+     * in radians.
+     */
+    public Quaternionf rotationXYZ(float angleX, float angleY, float angleZ) {
+
+        float sx = (float) Math.sin(angleX * 0.5f);
+        float cx = (float) Math.cos(angleX * 0.5f);
+        float sy = (float) Math.sin(angleY * 0.5f);
+        float cy = (float) Math.cos(angleY * 0.5f);
+        float sz = (float) Math.sin(angleZ * 0.5f);
+        float cz = (float) Math.cos(angleZ * 0.5f);
+
+        return set(
+            sx * cy * cz + cx * sy * sz,
+            cx * sy * cz - sx * cy * sz,
+            cx * cy * sz + sx * sy * cz,
+            cx * cy * cz - sx * sy * sz
+        );
+
+    }
+
+    /**
+     * Set this quaternion to this * q, which rotates by q first and then by this.
+     */
+    public Quaternionf mul(Quaternionf q) {
+        return set(
+            w * q.x + x * q.w + y * q.z - z * q.y,
+            w * q.y - x * q.z + y * q.w + z * q.x,
+            w * q.z + x * q.y - y * q.x + z * q.w,
+            w * q.w - x * q.x - y * q.y - z * q.z
+        );
+    }
+
+    /**
+     * Rescale to unit length, to undo the drift of many multiplications. A zero quaternion becomes the identity.
+     */
+    public Quaternionf normalize() {
+
+        float lengthSquared = x * x + y * y + z * z + w * w;
+        if (lengthSquared == 0.0f) {
+            return identity();
+        }
+        float inverseLength = 1.0f / (float) Math.sqrt(lengthSquared);
+        return set(x * inverseLength, y * inverseLength, z * inverseLength, w * inverseLength);
+
+    }
+
+    /**
+     * The rotation in the other direction. Only valid for unit quaternions.
+     */
+    public Quaternionf conjugate() {
+        return set(-x, -y, -z, w);
+    }
+
+    /**
+     * Rotate a vector by this quaternion, in place.
+     *
+     * @param v the vector to rotate
+     * @return the vector
+     */
+    public Vector3f transform(Vector3f v) {
+
+        // v + 2w(q x v) + 2q x (q x v), with q the vector part
+        float tx = 2.0f * (y * v.z - z * v.y);
+        float ty = 2.0f * (z * v.x - x * v.z);
+        float tz = 2.0f * (x * v.y - y * v.x);
+        return v.set(
+            v.x + w * tx + y * tz - z * ty,
+            v.y + w * ty + z * tx - x * tz,
+            v.z + w * tz + x * ty - y * tx
+        );
+
+    }
+
+    @Override
+    public String toString() {
+        return "(" + x + ", " + y + ", " + z + ", " + w + ")";
+    }
+
+}
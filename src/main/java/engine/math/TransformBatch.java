@@ -0,0 +1,336 @@
+package engine.math;
+
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memPutFloat;
+
+import java.nio.FloatBuffer;
+
+/**
+ * The transforms of many objects, stored as one array per component rather than one object per transform. Their world and
+ * model-view-projection matrices are computed for the whole batch at once and written straight into off-heap buffers, ready
+ * to be uploaded as uniforms or instance attributes.
+ *
+ * The matrices are computed one element at a time, each by a loop that reads a few arrays and writes one, all at the same
+ * index. That is the shape of loop the JIT compiles to SIMD instructions, and is several times faster than computing whole
+ * matrices per transform. The elements are then interleaved into the column major layout OpenGL expects. Nothing is
+ * allocated after construction.
+ */
+public class TransformBatch {
+
+    public static final int MATRIX_FLOATS = 16;
+
+    private final int capacity;
+    private int size;
+
+    // Position, rotation quaternion and scale of each transform
+    private final float[] positionX;
+    private final float[] positionY;
+    private final float[] positionZ;
+    private final float[] rotationX;
+    private final float[] rotationY;
+    private final float[] rotationZ;
+    private final float[] rotationW;
+    private final float[] scaleX;
+    private final float[] scaleY;
+    private final float[] scaleZ;
+
+    // The rotation and scale part of the world matrices, one array per element, column C and row R at index C * 3 + R. The
+    // translation column is the position and the bottom row is always 0 0 0 1, so neither is stored.
+    private final float[][] world;
+
+    // The model-view-projection matrices, one array per element, column C and row R at index C * 4 + R
+    private final float[][] mvp;
+
+    public TransformBatch(int capacity) {
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Transform batch capacity must be at least 1");
+        }
+        this.capacity = capacity;
+
+        positionX = new float[capacity];
+        positionY = new float[capacity];
+        positionZ = new float[capacity];
+        rotationX = new float[capacity];
+        rotationY = new float[capacity];
+        rotationZ = new float[capacity];
+        rotationW = new float[capacity];
+        scaleX = new float[capacity];
+        scaleY = new float[capacity];
+        scaleZ = new float[capacity];
+        world = new float[9][capacity];
+        mvp = new float[MATRIX_FLOATS][capacity];
+
+    }
+
+    /**
+     * Add an identity transform.
+     *
+     * @return the index of the transform
+     */
+    public int add() {
+
+        if (size == capacity) {
+            throw new IllegalStateException("Transform batch is full");
+        }
+        int index = size++;
+        setPosition(index, 0.0f, 0.0f, 0.0f);
+        setRotation(index, 0.0f, 0.0f, 0.0f, 1.0f);
+        setScale(index, 1.0f, 1.0f, 1.0f);
+        return index;
+
+    }
+
+    /**
+     * Remove a transform by moving the last one into its place.
+     *
+     * @param index the transform to remove
+     * @return the old index of the transform that now has the removed index, or -1 if the removed one was the last
+     */
+    public int removeSwap(int index) {
+
+        checkIndex(index);
+        int last = --size;
+        if (index == last) {
+            return -1;
+        }
+        setPosition(index, positionX[last], positionY[last], positionZ[last]);
+        setRotation(index, rotationX[last], rotationY[last], rotationZ[last], rotationW[last]);
+        setScale(index, scaleX[last], scaleY[last], scaleZ[last]);
+        return last;
+
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setPosition(int index, float x, float y, float z) {
+        positionX[index] = x;
+        positionY[index] = y;
+        positionZ[index] = z;
+    }
+
+    public void setPosition(int index, Vector3f position) {
+        setPosition(index, position.x, position.y, position.z);
+    }
+
+    public Vector3f getPosition(int index, Vector3f dest) {
+        return dest.set(positionX[index], positionY[index], positionZ[index]);
+    }
+
+    /**
+     * Set the rotation, which must be a unit quaternion.
+     */
+    public void setRotation(int index, float x, float y, float z, float w) {
+        rotationX[index] = x;
+        rotationY[index] = y;
+        rotationZ[index] = z;
+        rotationW[index] = w;
+    }
+
+    public void setRotation(int index, Quaternionf rotation) {
+        setRotation(index, rotation.x, rotation.y, rotation.z, rotation.w);
+    }
+
+    public Quaternionf getRotation(int index, Quaternionf dest) {
+        return dest.set(rotationX[index], rotationY[index], rotationZ[index], rotationW[index]);
+    }
+
+    public void setScale(int index, float x, float y, float z) {
+        scaleX[index] = x;
+        scaleY[index] = y;
+        scaleZ[index] = z;
+    }
+
+    public void setScale(int index, float scale) {
+        setScale(index, scale, scale, scale);
+    }
+
+    /**
+     * Compute the world matrix of every transform and write them one after the other at the position of the buffer. The
+     * position is not moved.
+     *
+     * @param dest an off-heap buffer with room for size() matrices
+     */
+    public void computeWorld(FloatBuffer dest) {
+        computeWorld();
+        writeWorld(dest);
+    }
+
+    /**
+     * Compute the model-view-projection matrix of every transform and write them one after the other at the position of the
+     * buffer. The position is not moved.
+     *
+     * @param viewProjection the projection matrix times the view matrix
+     * @param dest an off-heap buffer with room for size() matrices
+     */
+    public void computeMvp(Matrix4f viewProjection, FloatBuffer dest) {
+        computeWorld();
+        computeMvp(viewProjection);
+        writeMvp(dest);
+    }
+
+    /**
+     * Compute both matrices of every transform, for shaders that need the world position as well as the clip position.
+     */
+    public void computeWorldAndMvp(Matrix4f viewProjection, FloatBuffer worldDest, FloatBuffer mvpDest) {
+        computeWorld();
+        computeMvp(viewProjection);
+        writeWorld(worldDest);
+        writeMvp(mvpDest);
+    }
+
+    /**
+     * Scale, then rotate, then translate. Column C of the rotation is scaled by the scale along C.
+     */
+    private void computeWorld() {
+
+        float[] x = rotationX, y = rotationY, z = rotationZ, w = rotationW;
+        diagonal(world[0], y, z, scaleX, size);
+        sum(world[1], x, y, z, w, scaleX, size);
+        difference(world[2], x, z, y, w, scaleX, size);
+        difference(world[3], x, y, z, w, scaleY, size);
+        diagonal(world[4], x, z, scaleY, size);
+        sum(world[5], y, z, x, w, scaleY, size);
+        sum(world[6], x, z, y, w, scaleZ, size);
+        difference(world[7], y, z, x, w, scaleZ, size);
+        diagonal(world[8], x, y, scaleZ, size);
+
+    }
+
+    /**
+     * Multiply the view-projection matrix by every world matrix. Element C, R of the result is row R of the view-projection
+     * matrix times column C of the world matrix.
+     */
+    private void computeMvp(Matrix4f vp) {
+
+        computeMvpRow(0, vp.m00, vp.m10, vp.m20, vp.m30);
+        computeMvpRow(1, vp.m01, vp.m11, vp.m21, vp.m31);
+        computeMvpRow(2, vp.m02, vp.m12, vp.m22, vp.m32);
+        computeMvpRow(3, vp.m03, vp.m13, vp.m23, vp.m33);
+
+    }
+
+    private void computeMvpRow(int row, float v0, float v1, float v2, float v3) {
+        dot(mvp[row], v0, v1, v2, 0.0f, world[0], world[1], world[2], size);
+        dot(mvp[4 + row], v0, v1, v2, 0.0f, world[3], world[4], world[5], size);
+        dot(mvp[8 + row], v0, v1, v2, 0.0f, world[6], world[7], world[8], size);
+        dot(mvp[12 + row], v0, v1, v2, v3, positionX, positionY, positionZ, size);
+    }
+
+    // One loop per matrix element, each writing a single array, so the JIT can vectorize them
+
+    private static void diagonal(float[] dest, float[] a, float[] b, float[] scale, int n) {
+        for (int i = 0; i < n; i++) {
+            dest[i] = (1.0f - 2.0f * (a[i] * a[i] + b[i] * b[i])) * scale[i];
+        }
+    }
+
+    private static void sum(float[] dest, float[] a, float[] b, float[] c, float[] d, float[] scale, int n) {
+        for (int i = 0; i < n; i++) {
+            dest[i] = 2.0f * (a[i] * b[i] + c[i] * d[i]) * scale[i];
+        }
+    }
+
+    private static void difference(float[] dest, float[] a, float[] b, float[] c, float[] d, float[] scale, int n) {
+        for (int i = 0; i < n; i++) {
+            dest[i] = 2.0f * (a[i] * b[i] - c[i] * d[i]) * scale[i];
+        }
+    }
+
+    private static void dot(float[] dest, float v0, float v1, float v2, float v3, float[] a, float[] b, float[] c, int n) {
+        for (int i = 0; i < n; i++) {
+            dest[i] = v0 * a[i] + v1 * b[i] + v2 * c[i] + v3;
+        }
+    }
+
+    private void writeWorld(FloatBuffer dest) {
+
+        long address = checkBuffer(dest);
+        float[] m00 = world[0], m01 = world[1], m02 = world[2];
+        float[] m10 = world[3], m11 = world[4], m12 = world[5];
+        float[] m20 = world[6], m21 = world[7], m22 = world[8];
+
+        for (int i = 0; i < size; i++, address += MATRIX_FLOATS * Float.BYTES) {
+            memPutFloat(address, m00[i]);
+            memPutFloat(address + 4, m01[i]);
+            memPutFloat(address + 8, m02[i]);
+            memPutFloat(address + 12, 0.0f);
+            memPutFloat(address + 16, m10[i]);
+            memPutFloat(address + 20, m11[i]);
+            memPutFloat(address + 24, m12[i]);
+            memPutFloat(address + 28, 0.0f);
+            memPutFloat(address + 32, m20[i]);
+            memPutFloat(address + 36, m21[i]);
+            memPutFloat(address + 40, m22[i]);
+            memPutFloat(address + 44, 0.0f);
+            memPutFloat(address + 48, positionX[i]);
+            memPutFloat(address + 52, positionY[i]);
+            memPutFloat(address + 56, positionZ[i]);
+            memPutFloat(address + 60, 1.0f);
+        }
+
+    }
+
+    /**
+     * Interleave the element arrays into whole matrices. The arrays are held in locals and the stores unrolled, which is
+     * several times faster than looping over the elements.
+     */
+    private void writeMvp(FloatBuffer dest) {
+
+        long address = checkBuffer(dest);
+        float[] m00 = mvp[0], m01 = mvp[1], m02 = mvp[2], m03 = mvp[3];
+        float[] m10 = mvp[4], m11 = mvp[5], m12 = mvp[6], m13 = mvp[7];
+        float[] m20 = mvp[8], m21 = mvp[9], m22 = mvp[10], m23 = mvp[11];
+        float[] m30 = mvp[12], m31 = mvp[13], m32 = mvp[14], m33 = mvp[15];
+
+        for (int i = 0; i < size; i++, address += MATRIX_FLOATS * Float.BYTES) {
+            memPutFloat(address, m00[i]);
+            memPutFloat(address + 4, m01[i]);
+            memPutFloat(address + 8, m02[i]);
+            memPutFloat(address + 12, m03[i]);
+            memPutFloat(address + 16, m10[i]);
+            memPutFloat(address + 20, m11[i]);
+            memPutFloat(address + 24, m12[i]);
+            memPutFloat(address + 28, m13[i]);
+            memPutFloat(address + 32, m20[i]);
+            memPutFloat(address + 36, m21[i]);
+            memPutFloat(address + 40, m22[i]);
+            memPutFloat(address + 44, m23[i]);
+            memPutFloat(address + 48, m30[i]);
+            memPutFloat(address + 52, m31[i]);
+            memPutFloat(address + 56, m32[i]);
+            memPutFloat(address + 60, m33[i]);
+        }
+
+    }
+
+    private long checkBuffer(FloatBuffer dest) {
+
+        if (!dest.isDirect()) {
+            throw new IllegalArgumentException("Matrices can only be written to off-heap buffers");
+        }
+        if (dest.remaining() < size * MATRIX_FLOATS) {
+            throw new IllegalArgumentException(size + " matrices need " + size * MATRIX_FLOATS + " floats but only "
+                + dest.remaining() + " remain");
+        }
+        return memAddress(dest);
+
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Transform " + index + " is not in a batch of " + size);
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+package engine.math;
+
+/**
+ * A mutable three component vector. Every operation changes this vector and returns it, so calls can be chained and nothing
+ * is allocated. Keep instances around as fields and reuse them rather than creating them every frame.
+ */
+public class Vector3f {
+
+    public float x;
+    public float y;
+    public float z;
+
+    public Vector3f() {
+    }
+
+    public Vector3f(float x, float y, float z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    public Vector3f set(float x, float y, float z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return this;
+    }
+
+    public Vector3f set(Vector3f v) {
+        return set(v.x, v.y, v.z);
+    }
+
+    public Vector3f zero() {
+        return set(0.0f, 0.0f, 0.0f);
+    }
+
+    public Vector3f add(float x, float y, float z) {
+        return set(this.x + x, this.y + y, this.z + z);
+    }
+
+    public Vector3f add(Vector3f v) {
+        return add(v.x, v.y, v.z);
+    }
+
+    public Vector3f sub(Vector3f v) {
+        return set(x - v.x, y - v.y, z - v.z);
+    }
+
+    public Vector3f mul(float scalar) {
+        return set(x * scalar, y * scalar, z * scalar);
+    }
+
+    /**
+     * Add another vector scaled by a factor, as in moving a position along a velocity.
+     */
+    public Vector3f fma(float scalar, Vector3f v) {
+        return set(x + scalar * v.x, y + scalar * v.y, z + scalar * v.z);
+    }
+
+    public float dot(Vector3f v) {
+        return x * v.x + y * v.y + z * v.z;
+    }
+
+    /**
+     * Set this vector to the cross product of this and another vector.
+     */
+    public Vector3f cross(Vector3f v) {
+        return set(y * v.z - z * v.y, z * v.x - x * v.z, x * v.y - y * v.x);
+    }
+
+    public float lengthSquared() {
+        return x * x + y * y + z * z;
+    }
+
+    public float length() {
+        return (float) Math.sqrt(lengthSquared());
+    }
+
+    /**
+     * Scale this vector to unit length. A zero vector is left as it is.
+     */
+    public Vector3f normalize() {
+
+        float lengthSquared = lengthSquared();
+        if (lengthSquared == 0.0f) {
+            return this;
+        }
+        return mul(1.0f / (float) Math.sqrt(lengthSquared));
+
+    }
+
+    /**
+     * Move this vector towards another one by a fraction of the distance between them.
+     */
+    public Vector3f lerp(Vector3f v, float t) {
+        return set(x + (v.x - x) * t, y + (v.y - y) * t, z + (v.z - z) * t);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + x + ", " + y + ", " + z + ")";
+    }
+
+}
@@ -0,0 +1,292 @@
+package engine.profile;
+
+import static org.lwjgl.opengl.GL15.GL_QUERY_RESULT;
+import static org.lwjgl.opengl.GL15.GL_QUERY_RESULT_AVAILABLE;
+import static org.lwjgl.opengl.GL15.glDeleteQueries;
+import static org.lwjgl.opengl.GL15.glGenQueries;
+import static org.lwjgl.opengl.GL15.glGetQueryObjecti;
+import static org.lwjgl.opengl.GL32.glGetInteger64;
+import static org.lwjgl.opengl.GL33.GL_TIMESTAMP;
+import static org.lwjgl.opengl.GL33.glGetQueryObjecti64;
+import static org.lwjgl.opengl.GL33.glQueryCounter;
+
+import java.io.IOException;
+import java.io.Writer;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+/**
+ * Measures named, nestable scopes on the CPU and, when timer queries are available, on the GPU. GPU scopes are bracketed by
+ * two timestamp queries, since unlike GL_TIME_ELAPSED queries those can be nested. The queries of each frame go into a ring of
+ * query sets and are only read back when that set is about to be reused several frames later, so the CPU never waits for the
+ * GPU. If a set still isn't available by then its results are dropped instead.
+ *
+ * Completed scopes of both kinds are kept in a fixed size timeline on the CPU clock that can be written out in Chrome trace
+ * format. Nothing is allocated while profiling, so scope names should be constants.
+ */
+public class Profiler {
+
+    public static final int QUERY_FRAMES = 4;
+    public static final int MAX_GPU_SCOPES = 64;
+    public static final int MAX_DEPTH = 32;
+    public static final int MAX_EVENTS = 1 << 16;
+
+    private static final int TRACK_CPU = 1;
+    private static final int TRACK_GPU = 2;
+
+    // The timeline of completed scopes, oldest events are overwritten
+    private final String[] eventNames = new String[MAX_EVENTS];
+    private final long[] eventStarts = new long[MAX_EVENTS];
+    private final long[] eventDurations = new long[MAX_EVENTS];
+    private final int[] eventTracks = new int[MAX_EVENTS];
+    private int eventHead;
+    private int eventCount;
+
+    // The currently open scopes
+    private final String[] stackNames = new String[MAX_DEPTH];
+    private final long[] stackStarts = new long[MAX_DEPTH];
+    private final int[] stackGpuScopes = new int[MAX_DEPTH];
+    private int depth;
+
+    // A set of begin/end timestamp queries per frame in flight
+    private final int[][] queries = new int[QUERY_FRAMES][MAX_GPU_SCOPES * 2];
+    private final String[][] gpuNames = new String[QUERY_FRAMES][MAX_GPU_SCOPES];
+    private final int[] gpuScopeCounts = new int[QUERY_FRAMES];
+
+    // The index of the timestamp query issued last in each set. With nesting that is not always the end of the last scope.
+    private final int[] lastQueries = new int[QUERY_FRAMES];
+    private int frameSlot;
+    private boolean gpuEnabled;
+    private long gpuClockOffset;
+    private int droppedFrames;
+
+    // The GPU scopes of the latest frame that was read back
+    private final String[] collectedNames = new String[MAX_GPU_SCOPES];
+    private final long[] collectedDurations = new long[MAX_GPU_SCOPES];
+    private int collectedCount;
+    private long collectedFrames;
+
+    private final long startTime = System.nanoTime();
+
+    /**
+     * Create the timestamp queries if the context supports them. Must be called with the OpenGL context current.
+     */
+    public void init() {
+
+        GLCapabilities caps = GL.getCapabilities();
+        gpuEnabled = caps.OpenGL33 || caps.GL_ARB_timer_query;
+        if (!gpuEnabled) {
+            System.err.println("Timer queries are not supported, only CPU scopes will be profiled");
+            return;
+        }
+
+        for (int[] frameQueries : queries) {
+            glGenQueries(frameQueries);
+        }
+
+        // GPU timestamps use their own clock, so remember how far it is from ours
+        gpuClockOffset = System.nanoTime() - glGetInteger64(GL_TIMESTAMP);
+
+    }
+
+    /**
+     * Start a new frame of GPU scopes. The query set about to be reused is read back first.
+     */
+    public void beginFrame() {
+
+        if (depth > 0) {
+            throw new IllegalStateException("Profiler scopes must not span frames");
+        }
+        frameSlot = (frameSlot + 1) % QUERY_FRAMES;
+        if (gpuScopeCounts[frameSlot] > 0) {
+            collect(frameSlot);
+        }
+        gpuScopeCounts[frameSlot] = 0;
+
+    }
+
+    /**
+     * Open a scope that is timed on both the CPU and the GPU.
+     *
+     * @param name the scope name
+     */
+    public void begin(String name) {
+
+        int gpuScope = -1;
+        if (gpuEnabled && gpuScopeCounts[frameSlot] < MAX_GPU_SCOPES) {
+            gpuScope = gpuScopeCounts[frameSlot]++;
+            gpuNames[frameSlot][gpuScope] = name;
+            glQueryCounter(queries[frameSlot][gpuScope * 2], GL_TIMESTAMP);
+            lastQueries[frameSlot] = gpuScope * 2;
+        }
+        push(name, gpuScope);
+
+    }
+
+    /**
+     * Open a scope that is only timed on the CPU, for work that doesn't issue any GL commands.
+     *
+     * @param name the scope name
+     */
+    public void beginCpu(String name) {
+        push(name, -1);
+    }
+
+    /**
+     * Close the innermost open scope.
+     */
+    public void end() {
+
+        if (depth == 0) {
+            throw new IllegalStateException("No profiler scope is open");
+        }
+        depth--;
+
+        int gpuScope = stackGpuScopes[depth];
+        if (gpuScope >= 0) {
+            glQueryCounter(queries[frameSlot][gpuScope * 2 + 1], GL_TIMESTAMP);
+            lastQueries[frameSlot] = gpuScope * 2 + 1;
+        }
+        long start = stackStarts[depth];
+        addEvent(stackNames[depth], TRACK_CPU, start, System.nanoTime() - start);
+
+    }
+
+    public boolean isGpuEnabled() {
+        return gpuEnabled;
+    }
+
+    /**
+     * The GPU time of a scope in the most recent frame whose results were read back. This lags a few frames behind the frame
+     * being rendered. Only the time between the scope's two timestamps is counted, so a scope that doesn't wrap the buffer
+     * swap never includes waiting for vsync.
+     *
+     * @param name the scope name
+     * @return the time of the first scope with that name in nanoseconds, or -1 if that frame had no such scope
+     */
+    public long getGpuScopeNanos(String name) {
+
+        for (int i = 0; i < collectedCount; i++) {
+            if (collectedNames[i].equals(name)) {
+                return collectedDurations[i];
+            }
+        }
+        return -1;
+
+    }
+
+    /**
+     * The number of frames whose GPU results were read back, to tell whether getGpuScopeNanos has a new value.
+     *
+     * @return the read back frame count
+     */
+    public long getCollectedFrames() {
+        return collectedFrames;
+    }
+
+    /**
+     * The number of frames whose GPU results were not ready in time and had to be dropped.
+     *
+     * @return the dropped frame count
+     */
+    public int getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Write the timeline in the Chrome trace event format, which can be loaded in chrome://tracing or Perfetto. CPU scopes
+     * and GPU scopes are shown as two threads of the same process.
+     *
+     * @param writer the writer to write to
+     * @throws IOException if writing fails
+     */
+    public void writeChromeTrace(Writer writer) throws IOException {
+
+        writer.write("{\"traceEvents\":[\n");
+        writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":1,\"args\":{\"name\":\"CPU\"}},\n");
+        writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":2,\"args\":{\"name\":\"GPU\"}}");
+
+        int first = (eventHead - eventCount + MAX_EVENTS) % MAX_EVENTS;
+        for (int i = 0; i < eventCount; i++) {
+            int event = (first + i) % MAX_EVENTS;
+            writer.write(",\n{\"name\":\"");
+            writer.write(escape(eventNames[event]));
+            writer.write("\",\"ph\":\"X\",\"pid\":1,\"tid\":");
+            writer.write(Integer.toString(eventTracks[event]));
+            writer.write(",\"ts\":");
+            writer.write(Double.toString((eventStarts[event] - startTime) / 1000.0));
+            writer.write(",\"dur\":");
+            writer.write(Double.toString(eventDurations[event] / 1000.0));
+            writer.write("}");
+        }
+        writer.write("\n]}\n");
+
+    }
+
+    /**
+     * Free the timestamp queries.
+     */
+    public void cleanup() {
+
+        if (gpuEnabled) {
+            for (int[] frameQueries : queries) {
+                glDeleteQueries(frameQueries);
+            }
+            gpuEnabled = false;
+        }
+
+    }
+
+    private void push(String name, int gpuScope) {
+
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("Profiler scopes are nested too deeply");
+        }
+        stackNames[depth] = name;
+        stackGpuScopes[depth] = gpuScope;
+        stackStarts[depth] = System.nanoTime();
+        depth++;
+
+    }
+
+    /**
+     * Read back the GPU scopes of a query set. Queries complete in order, so if the last issued one is available all of them
+     * are.
+     */
+    private void collect(int slot) {
+
+        int count = gpuScopeCounts[slot];
+        int[] frameQueries = queries[slot];
+        if (glGetQueryObjecti(frameQueries[lastQueries[slot]], GL_QUERY_RESULT_AVAILABLE) == 0) {
+            droppedFrames++;
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            long start = glGetQueryObjecti64(frameQueries[i * 2], GL_QUERY_RESULT);
+            long end = glGetQueryObjecti64(frameQueries[i * 2 + 1], GL_QUERY_RESULT);
+            addEvent(gpuNames[slot][i], TRACK_GPU, start + gpuClockOffset, end - start);
+            collectedNames[i] = gpuNames[slot][i];
+            collectedDurations[i] = end - start;
+        }
+        collectedCount = count;
+        collectedFrames++;
+
+    }
+
+    private void addEvent(String name, int track, long start, long duration) {
+
+        eventNames[eventHead] = name;
+        eventTracks[eventHead] = track;
+        eventStarts[eventHead] = start;
+        eventDurations[eventHead] = duration;
+        eventHead = (eventHead + 1) % MAX_EVENTS;
+        eventCount = Math.min(eventCount + 1, MAX_EVENTS);
+
+    }
+
+    private static String escape(String name) {
+        return name.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+}
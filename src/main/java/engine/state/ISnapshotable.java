@@ -0,0 +1,33 @@
+package engine.state;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Implemented by any engine-managed state that wants to take part in snapshots. The state is written to and read from a
+ * preallocated off-heap buffer, so implementations should use the absolute or relative put/get methods and never allocate.
+ */
+public interface ISnapshotable {
+
+    /**
+     * The maximum number of bytes this state will ever write. It is queried once when the state is registered and is used to
+     * lay out the snapshot buffers, so it must not grow afterwards.
+     *
+     * @return the snapshot size in bytes
+     */
+    int getSnapshotSize();
+
+    /**
+     * Write the current state starting at the buffer's position.
+     *
+     * @param buffer the buffer to write to
+     */
+    void save(ByteBuffer buffer);
+
+    /**
+     * Read the state back starting at the buffer's position, in the same order it was written.
+     *
+     * @param buffer the buffer to read from
+     */
+    void restore(ByteBuffer buffer);
+
+}
@@ -0,0 +1,240 @@
+package engine.state;
+
+import static org.lwjgl.system.MemoryUtil.memCalloc;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the game state of the last N ticks so it can be rolled back and resimulated. All registered states are written into
+ * one preallocated off-heap buffer. Only the latest full state is kept; every tick in the ring stores the XOR of its state with
+ * the previous tick, run-length encoded so unchanged words cost nothing. Rolling back applies those deltas from the newest tick
+ * backwards, so nothing is allocated and the cost scales with how much actually changed.
+ */
+public class SnapshotRing {
+
+    private final int capacity;
+
+    private final List<ISnapshotable> states = new ArrayList<>();
+    private final List<Integer> offsets = new ArrayList<>();
+    private int stateSize;
+
+    // The latest full state and the buffer the next one is written into
+    private ByteBuffer current;
+    private ByteBuffer scratch;
+
+    // One encoded delta per tick, stored in a ring
+    private ByteBuffer[] deltas;
+    private int[] deltaLengths;
+    private int headSlot;
+    private int count;
+    private long headTick;
+
+    /**
+     * Create a ring that can roll back up to the given number of ticks. States have to be registered before init is called.
+     *
+     * @param capacity the number of ticks to keep
+     */
+    public SnapshotRing(int capacity) {
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Snapshot capacity must be at least 1");
+        }
+        this.capacity = capacity;
+
+    }
+
+    /**
+     * Add a state to the snapshot layout. Each state gets its own region, padded to a multiple of 8 bytes so the deltas can be
+     * computed a long at a time.
+     *
+     * @param state the state to register
+     */
+    public void register(ISnapshotable state) {
+
+        if (current != null) {
+            throw new IllegalStateException("States must be registered before the snapshot ring is initialised");
+        }
+        offsets.add(stateSize);
+        states.add(state);
+        stateSize += (state.getSnapshotSize() + 7) & ~7;
+
+    }
+
+    /**
+     * Allocate the off-heap buffers. The state buffers are zeroed, so the first delta holds the full state.
+     */
+    public void init() {
+
+        current = memCalloc(stateSize);
+        scratch = memCalloc(stateSize);
+
+        // Worst case every other word changes, which adds an 8 byte header per changed word
+        int maxDeltaSize = stateSize * 2 + 8;
+        deltas = new ByteBuffer[capacity];
+        deltaLengths = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            deltas[i] = memCalloc(maxDeltaSize);
+        }
+        headSlot = capacity - 1;
+
+    }
+
+    public boolean hasStates() {
+        return !states.isEmpty();
+    }
+
+    /**
+     * Capture the state of every registered object for the given tick. Ticks must be saved in consecutive order.
+     *
+     * @param tick the tick being saved
+     */
+    public void save(long tick) {
+
+        if (count > 0 && tick != headTick + 1) {
+            throw new IllegalArgumentException("Expected a snapshot for tick " + (headTick + 1) + " but got " + tick);
+        }
+
+        // Write each state into its own region of the scratch buffer
+        for (int i = 0; i < states.size(); i++) {
+            int offset = offsets.get(i);
+            ISnapshotable state = states.get(i);
+            scratch.clear().position(offset);
+            state.save(scratch);
+            if (scratch.position() > offset + state.getSnapshotSize()) {
+                throw new IllegalStateException("State wrote more than its declared snapshot size: " + state);
+            }
+        }
+
+        // Encode the difference with the previous tick into the next slot, overwriting the oldest tick if the ring is full
+        headSlot = (headSlot + 1) % capacity;
+        deltaLengths[headSlot] = encode(scratch, current, deltas[headSlot]);
+        headTick = tick;
+        count = Math.min(count + 1, capacity);
+
+        // The scratch buffer now holds the latest state
+        ByteBuffer latest = scratch;
+        scratch = current;
+        current = latest;
+
+    }
+
+    /**
+     * Roll every registered state back to the given tick. Ticks newer than that are discarded, so the next save continues
+     * from tick + 1.
+     *
+     * @param tick the tick to restore
+     */
+    public void restore(long tick) {
+
+        if (count == 0 || tick > headTick || tick < getOldestTick()) {
+            throw new IllegalArgumentException("Tick " + tick + " is not in the snapshot ring");
+        }
+
+        // Undo the newest deltas until we reach the requested tick
+        while (headTick > tick) {
+            apply(deltas[headSlot], deltaLengths[headSlot], current);
+            headSlot = (headSlot - 1 + capacity) % capacity;
+            headTick--;
+            count--;
+        }
+
+        for (int i = 0; i < states.size(); i++) {
+            current.clear().position(offsets.get(i));
+            states.get(i).restore(current);
+        }
+
+    }
+
+    public long getLatestTick() {
+        return headTick;
+    }
+
+    public long getOldestTick() {
+        return headTick - count + 1;
+    }
+
+    public int getSize() {
+        return count;
+    }
+
+    /**
+     * Free the off-heap buffers.
+     */
+    public void cleanup() {
+
+        if (current != null) {
+            memFree(current);
+            memFree(scratch);
+            for (ByteBuffer delta : deltas) {
+                memFree(delta);
+            }
+            current = null;
+        }
+
+    }
+
+    /**
+     * Write the XOR of two states as a list of runs. Each run is the number of unchanged words to skip, the number of changed
+     * words that follow and then those words. Trailing unchanged words are left out.
+     */
+    private int encode(ByteBuffer state, ByteBuffer previous, ByteBuffer out) {
+
+        int words = stateSize >> 3;
+        int pos = 0;
+        int i = 0;
+        while (i < words) {
+
+            // Skip the words that did not change
+            int skipStart = i;
+            while (i < words && state.getLong(i << 3) == previous.getLong(i << 3)) {
+                i++;
+            }
+            if (i == words) {
+                break;
+            }
+
+            // Reserve the run header, then copy out the changed words
+            int header = pos;
+            pos += 8;
+            int literalStart = i;
+            while (i < words) {
+                long diff = state.getLong(i << 3) ^ previous.getLong(i << 3);
+                if (diff == 0) {
+                    break;
+                }
+                out.putLong(pos, diff);
+                pos += 8;
+                i++;
+            }
+            out.putInt(header, literalStart - skipStart);
+            out.putInt(header + 4, i - literalStart);
+
+        }
+        return pos;
+
+    }
+
+    /**
+     * XOR an encoded delta into the target state. Applying the same delta twice cancels it out, which is how ticks are undone.
+     */
+    private static void apply(ByteBuffer delta, int length, ByteBuffer target) {
+
+        int pos = 0;
+        int offset = 0;
+        while (pos < length) {
+            offset += delta.getInt(pos) << 3;
+            int literals = delta.getInt(pos + 4);
+            pos += 8;
+            for (int j = 0; j < literals; j++) {
+                target.putLong(offset, target.getLong(offset) ^ delta.getLong(pos));
+                offset += 8;
+                pos += 8;
+            }
+        }
+
+    }
+
+}
@@ -7,29 +7,43 @@ import static org.lwjgl.opengl.GL11.glViewport;
 import engine.IGameLogic;
 import engine.Window;
 import engine.graph.Mesh;
+import engine.math.TransformBatch;
+import engine.profile.Profiler;
+import engine.state.ISnapshotable;
+import java.nio.ByteBuffer;
 
 /**
  * Simple game logic class that increases and decreases the clear color of the window whenever we press
- * the up or down key respectively. The render method will just clear the window with that color.
+ * the up or down key respectively. The render method will just clear the window with that color. The color and direction are
+ * saved every update so the engine can roll them back.
  */
-public class DummyGame implements IGameLogic {
+public class DummyGame implements IGameLogic, ISnapshotable {
 
     private int direction = 0;
     private float color = 0.0f;
     private final Renderer renderer;
     private Mesh mesh;
 
-    public DummyGame() {
-        renderer = new Renderer();
+    // Where the square is drawn, at the origin for now
+    private final TransformBatch transforms = new TransformBatch(1);
+
+    // Mesh data built by load, uploaded by init
+    private float[] positions;
+    private float[] colour;
+    private int[] indices;
+
+    public DummyGame(Profiler profiler) {
+        renderer = new Renderer(profiler);
     }
 
     @Override
-    public void init() throws Exception {
+    public void load() throws Exception {
 
-        renderer.init();
+        renderer.load();
+        transforms.add();
 
         // Vertices for a square
-        float[] positions = new float[] {
+        positions = new float[] {
             -0.5f, 0.5f, 0.0f,
             -0.5f, -0.5f, 0.0f,
             0.5f, -0.5f, 0.0f,
@@ -37,7 +51,7 @@ public class DummyGame implements IGameLogic {
         };
 
         // Colour for the square
-        float[] colour = new float[]{
+        colour = new float[]{
             0.5f, 0.0f, 0.0f,
             0.0f, 0.5f, 0.0f,
             0.0f, 0.0f, 0.5f,
@@ -45,12 +59,22 @@ public class DummyGame implements IGameLogic {
         };
 
         // Indices for a square
-        int[] indices = new int[]{
+        indices = new int[]{
           0, 1, 3, 3, 1, 2,
         };
 
-        // Create a square mesh
+    }
+
+    @Override
+    public void init() throws Exception {
+
+        renderer.init();
+
+        // Create a square mesh from what load built
         mesh = new Mesh(positions, colour, indices);
+        positions = null;
+        colour = null;
+        indices = null;
 
     }
 
@@ -88,8 +112,24 @@ public class DummyGame implements IGameLogic {
 
         // Set the clear color of the window
         window.setClearColor(color, color, color, 0.0f);
-        renderer.render(window, mesh);
+        renderer.render(window, mesh, transforms);
+
+    }
+
+    @Override
+    public int getSnapshotSize() {
+        return Integer.BYTES + Float.BYTES;
+    }
 
+    @Override
+    public void save(ByteBuffer buffer) {
+        buffer.putInt(direction).putFloat(color);
+    }
+
+    @Override
+    public void restore(ByteBuffer buffer) {
+        direction = buffer.getInt();
+        color = buffer.getFloat();
     }
 
     @Override
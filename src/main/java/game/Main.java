@@ -2,6 +2,7 @@ package game;
 
 import engine.GameEngine;
 import engine.IGameLogic;
+import engine.profile.Profiler;
 
 /**
  * Our starting point. Contains the main method and will only create a GameEngine instance and start it.
@@ -11,8 +12,9 @@ public class Main {
     public static void main(String[] args) {
         try {
             boolean vSync = true;
-            IGameLogic gameLogic = new DummyGame();
-            GameEngine gameEng = new GameEngine("GAME", 600, 480, vSync, gameLogic);
+            Profiler profiler = new Profiler();
+            IGameLogic gameLogic = new DummyGame(profiler);
+            GameEngine gameEng = new GameEngine("GAME", 600, 480, vSync, gameLogic, profiler);
             gameEng.start();
         }
         catch (Exception excp) {
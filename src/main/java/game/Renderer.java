@@ -11,48 +11,136 @@ import static org.lwjgl.opengl.GL11.glViewport;
 import static org.lwjgl.opengl.GL20.glDisableVertexAttribArray;
 import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
 import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.system.MemoryUtil.memAllocFloat;
+import static org.lwjgl.system.MemoryUtil.memFree;
 
 import engine.Utils;
 import engine.Window;
 import engine.graph.Mesh;
 import engine.graph.ShaderProgram;
+import engine.graph.texture.TextureManager;
+import engine.math.Matrix4f;
+import engine.math.TransformBatch;
+import engine.profile.Profiler;
+import java.nio.FloatBuffer;
 
 public class Renderer {
 
+    private final Profiler profiler;
+
+    // Created when the game first asks for it, so no worker threads are started for a game without textures
+    private TextureManager textureManager;
+
     private ShaderProgram shaderProgram;
 
+    // The camera looks down -z at the origin, the projection keeps a unit of x as wide as a unit of y
+    private final Matrix4f projection = new Matrix4f();
+    private final Matrix4f view = new Matrix4f();
+    private final Matrix4f viewProjection = new Matrix4f();
+
+    // The model-view-projection matrix of every transform, recomputed each frame
+    private FloatBuffer mvpMatrices;
+
+    // Shader sources read by load, compiled by init
+    private String vertexSource;
+    private String fragmentSource;
+
+    public Renderer(Profiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Read the shader sources. Makes no OpenGL calls, so it can run before the context exists.
+     */
+    public void load() throws Exception {
+        vertexSource = Utils.loadResource("/vertex.vs");
+        fragmentSource = Utils.loadResource("/fragment.fs");
+    }
+
     public void init() throws Exception {
 
         // Create and link a vertex and fragment shader
         shaderProgram = new ShaderProgram();
-        shaderProgram.createVertexShader(Utils.loadResource("/vertex.vs"));
-        shaderProgram.createFragmentShader(Utils.loadResource("/fragment.fs"));
+        shaderProgram.createVertexShader(vertexSource);
+        shaderProgram.createFragmentShader(fragmentSource);
         shaderProgram.link();
+        shaderProgram.createUniform("modelViewProjection");
+        vertexSource = null;
+        fragmentSource = null;
 
     }
 
-    public void render(Window window, Mesh mesh) {
+    /**
+     * Draw the mesh once for every transform in the batch.
+     */
+    public void render(Window window, Mesh mesh, TransformBatch transforms) {
+
+        // Upload whatever textures finished decoding, within this frame's budget
+        if (textureManager != null) {
+            profiler.begin("texture uploads");
+            textureManager.update();
+            profiler.end();
+        }
 
+        profiler.begin("clear");
         clear();
+        profiler.end();
 
         if ( window.isResized() ) {
             glViewport(0, 0, window.getWidth(), window.getHeight());
             window.setResized(false);
         }
 
+        profiler.beginCpu("transforms");
+        float aspect = (float) window.getWidth() / Math.max(window.getHeight(), 1);
+        projection.orthographic(-aspect, aspect, -1.0f, 1.0f, -1.0f, 1.0f);
+        projection.mul(view, viewProjection);
+        if (mvpMatrices == null || mvpMatrices.capacity() < transforms.getCapacity() * TransformBatch.MATRIX_FLOATS) {
+            if (mvpMatrices != null) {
+                memFree(mvpMatrices);
+            }
+            mvpMatrices = memAllocFloat(transforms.getCapacity() * TransformBatch.MATRIX_FLOATS);
+        }
+        transforms.computeMvp(viewProjection, mvpMatrices);
+        profiler.end();
+
+        profiler.begin("draw mesh");
         shaderProgram.bind();
 
         // Bind, enable, and draw the mesh
         glBindVertexArray(mesh.getVaoId());
         glEnableVertexAttribArray(0);
         glEnableVertexAttribArray(1);
-        glDrawElements(GL_TRIANGLES, mesh.getVertexCount(), GL_UNSIGNED_INT, 0);
+        if (mesh.hasTextCoords()) {
+            glEnableVertexAttribArray(2);
+        }
+        for (int i = 0; i < transforms.size(); i++) {
+            shaderProgram.setUniform("modelViewProjection", mvpMatrices, i);
+            glDrawElements(GL_TRIANGLES, mesh.getVertexCount(), GL_UNSIGNED_INT, 0);
+        }
 
         // Restore state
         glDisableVertexAttribArray(0);
+        if (mesh.hasTextCoords()) {
+            glDisableVertexAttribArray(2);
+        }
         glBindVertexArray(0);
 
         shaderProgram.unbind();
+        profiler.end();
+
+    }
+
+    /**
+     * Get the texture manager, creating it on first use. Must be called on the GL thread after init.
+     */
+    public TextureManager getTextureManager() {
+
+        if (textureManager == null) {
+            textureManager = new TextureManager();
+            textureManager.init();
+        }
+        return textureManager;
 
     }
 
@@ -61,9 +149,16 @@ public class Renderer {
      */
     public void cleanup() {
 
+        if (textureManager != null) {
+            textureManager.cleanup();
+        }
         if (shaderProgram != null) {
             shaderProgram.cleanup();
         }
+        if (mvpMatrices != null) {
+            memFree(mvpMatrices);
+            mvpMatrices = null;
+        }
 
     }
 
@@ -0,0 +1,13 @@
+#version 330
+
+in vec2 outTexCoord;
+in vec4 outColour;
+out vec4 fragColor;
+
+uniform sampler2D glyphAtlas;
+
+void main()
+{
+    // The atlas only stores coverage, in the red channel
+    fragColor = vec4(outColour.rgb, outColour.a * texture(glyphAtlas, outTexCoord).r);
+}
@@ -0,0 +1,18 @@
+#version 330
+
+layout (location =0) in vec2 position;
+layout (location =1) in vec2 texCoord;
+layout (location =2) in vec4 colour;
+
+out vec2 outTexCoord;
+out vec4 outColour;
+
+uniform vec2 screenSize;
+
+void main()
+{
+    // Positions are in pixels from the top left corner
+    gl_Position = vec4(position.x / screenSize.x * 2.0 - 1.0, 1.0 - position.y / screenSize.y * 2.0, 0.0, 1.0);
+    outTexCoord = texCoord;
+    outColour = colour;
+}
@@ -5,8 +5,10 @@ layout (location =1) in vec3 inColour;
 
 out vec3 exColour;
 
+uniform mat4 modelViewProjection;
+
 void main()
 {
-    gl_Position = vec4(position, 1.0);
+    gl_Position = modelViewProjection * vec4(position, 1.0);
     exColour = inColour;
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package engine.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class AudioCommandQueueTest {
+
+    private static final int PRODUCERS = 3;
+    private static final int COMMANDS_PER_PRODUCER = 3_000_000;
+
+    @Test
+    public void fullRingRefusesClaims() {
+
+        AudioCommandQueue queue = new AudioCommandQueue(4);
+        for (int i = 0; i < 4; i++) {
+            AudioCommand command = queue.claim();
+            assertNotNull(command);
+            command.handle = i;
+            queue.publish(command);
+        }
+        assertNull(queue.claim());
+
+        // Releasing one slot makes room for exactly one more command
+        assertEquals(0, queue.peek().handle);
+        queue.release();
+        assertNotNull(queue.claim());
+        assertNull(queue.claim());
+
+    }
+
+    @Test
+    public void commandIsHiddenUntilPublished() {
+
+        AudioCommandQueue queue = new AudioCommandQueue(4);
+        AudioCommand first = queue.claim();
+        AudioCommand second = queue.claim();
+        queue.publish(second);
+
+        // The second command waits for the first, which was claimed before it
+        assertNull(queue.peek());
+        queue.publish(first);
+        assertSame(first, queue.peek());
+        queue.release();
+        assertSame(second, queue.peek());
+        queue.release();
+        assertNull(queue.peek());
+
+    }
+
+    /**
+     * Several threads send numbered commands through a small ring while this thread takes them, so the ring wraps many
+     * times with producers racing for every position. Every command must arrive, in order per producer.
+     */
+    @Test(timeout = 120_000)
+    public void severalProducersOneConsumer() throws Exception {
+
+        AudioCommandQueue queue = new AudioCommandQueue(AudioEngine.COMMAND_CAPACITY);
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            int producer = p;
+            producers[p] = new Thread(() -> {
+                for (int i = 0; i < COMMANDS_PER_PRODUCER; i++) {
+                    AudioCommand command;
+                    while ((command = queue.claim()) == null) {
+                        Thread.yield();
+                    }
+                    command.priority = producer;
+                    command.handle = i;
+                    queue.publish(command);
+                }
+            }, "producer-" + p);
+            producers[p].start();
+        }
+
+        int[] expected = new int[PRODUCERS];
+        long received = 0;
+        while (received < (long) PRODUCERS * COMMANDS_PER_PRODUCER) {
+            AudioCommand command = queue.peek();
+            if (command == null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals("Command out of order from producer " + command.priority, expected[command.priority],
+                command.handle);
+            expected[command.priority]++;
+            received++;
+            queue.release();
+        }
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertNull(queue.peek());
+
+    }
+
+}
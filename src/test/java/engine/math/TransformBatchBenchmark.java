@@ -0,0 +1,89 @@
+package engine.math;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+/**
+ * Times computing model-view-projection matrices with a TransformBatch against building each one through Matrix4f, the way
+ * the renderer did before. Both write into the same off-heap buffer. Run it after mvn test-compile with
+ *
+ * java -cp target/classes:target/test-classes:[lwjgl jars] engine.math.TransformBatchBenchmark [transforms]
+ *
+ * It is a plain timing loop rather than a JMH benchmark, so give it a quiet machine and look at the last rounds, once the JIT
+ * has compiled both paths.
+ */
+public class TransformBatchBenchmark {
+
+    private static final int ROUNDS = 10;
+    private static final long ROUND_NANOS = 500_000_000;
+
+    public static void main(String[] args) {
+
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        Random random = new Random(1);
+
+        TransformBatch batch = new TransformBatch(count);
+        float[] scales = new float[count];
+        Quaternionf rotation = new Quaternionf();
+        for (int i = 0; i < count; i++) {
+            batch.add();
+            batch.setPosition(i, random.nextFloat() * 10.0f, random.nextFloat() * 10.0f, -random.nextFloat() * 10.0f);
+            batch.setRotation(i, rotation.rotationXYZ(random.nextFloat() * 3.0f, random.nextFloat() * 3.0f,
+                random.nextFloat() * 3.0f));
+            scales[i] = random.nextFloat() + 0.5f;
+            batch.setScale(i, scales[i]);
+        }
+
+        Matrix4f viewProjection = new Matrix4f().perspective(1.0f, 16.0f / 9.0f, 0.1f, 100.0f)
+            .mul(new Matrix4f().lookAt(new Vector3f(0.0f, 2.0f, 5.0f), new Vector3f(), new Vector3f(0.0f, 1.0f, 0.0f)));
+        FloatBuffer dest = ByteBuffer.allocateDirect(count * TransformBatch.MATRIX_FLOATS * Float.BYTES)
+            .order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+        Vector3f position = new Vector3f();
+        Matrix4f world = new Matrix4f();
+        Matrix4f mvp = new Matrix4f();
+
+        System.out.println(count + " transforms, nanoseconds per transform");
+        float check = 0.0f;
+        for (int round = 1; round <= ROUNDS; round++) {
+
+            long iterations = 0;
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                batch.computeMvp(viewProjection, dest);
+                check += dest.get(count);
+                iterations++;
+            } while ((elapsed = System.nanoTime() - start) < ROUND_NANOS);
+            double batchNanos = (double) elapsed / iterations / count;
+
+            iterations = 0;
+            start = System.nanoTime();
+            do {
+                for (int i = 0; i < count; i++) {
+                    batch.getPosition(i, position);
+                    batch.getRotation(i, rotation);
+                    world.translationRotateScale(position.x, position.y, position.z, rotation.x, rotation.y, rotation.z,
+                        rotation.w, scales[i], scales[i], scales[i]);
+                    viewProjection.mul(world, mvp);
+                    dest.position(i * TransformBatch.MATRIX_FLOATS);
+                    mvp.get(dest);
+                }
+                dest.position(0);
+                check += dest.get(count);
+                iterations++;
+            } while ((elapsed = System.nanoTime() - start) < ROUND_NANOS);
+            double singleNanos = (double) elapsed / iterations / count;
+
+            System.out.printf("round %2d  batch %6.1f  Matrix4f %6.1f%n", round, batchNanos, singleNanos);
+
+        }
+
+        // Print the sum so the JIT can't drop the work
+        System.out.println("checksum " + check);
+
+    }
+
+}